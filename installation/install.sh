@@ -8,7 +8,7 @@
 #
 # Description:
 #   This installation file updates the git config
-#   and copies the pre-commit and commit-msg file to their correct path
+#   and copies the pre-commit, commit-msg, prepare-commit-msg and post-checkout file to their correct path
 ##################################################
 
 # the root of the common path is the root of the project 
@@ -18,6 +18,7 @@ GITHOOK_COMMON_PATH=example_path
 find . -name "*.sh" -exec dos2unix {} \;
 find . -name "*pre-commit" -exec dos2unix {} \;
 find . -name "*commit-msg" -exec dos2unix {} \;
+find . -name "*post-checkout" -exec dos2unix {} \;
 
 ############################## GIT CONFIGURATION SETTINGS ##############################
 # ------------- GLOBAL GIT CONFIG SETTINGS -------------------------------
@@ -60,6 +61,19 @@ then
    fi
 fi
 
+# Background daemon
+if [ ! -n "$(git config --global githook.daemon)" ];
+then
+   read -p "Keep the git hook running in the background between commits [y/n]? " -n 1 -r use_daemon; echo
+
+   if [ "${use_daemon}" == Y -o "${use_daemon}" == y ];
+   then
+     git config --global --bool githook.daemon true
+   else
+     git config --global --bool githook.daemon false
+   fi
+fi
+
 # ------------- LOCAL GIT CONFIG SETTINGS -------------------------------
 # Language settings
 if [ ! -n "$(git config --local githook.language)" ];
@@ -94,4 +108,14 @@ fi
 if [ ! -e .git/hooks/pre-commit ]; then
     cp -p ${GITHOOK_COMMON_PATH}/hooks/pre-commit .git/hooks/
 	cp -p ${GITHOOK_COMMON_PATH}/hooks/commit-msg .git/hooks/
+fi
+
+# Copy the prepare-commit-msg file, which prefetches the JIRA issues while the commit message is written
+if [ ! -e .git/hooks/prepare-commit-msg ]; then
+    cp -p ${GITHOOK_COMMON_PATH}/hooks/prepare-commit-msg .git/hooks/
+fi
+
+# Copy the post-checkout file, which warms the issue cache with the issues named by a checked out branch
+if [ ! -e .git/hooks/post-checkout ]; then
+    cp -p ${GITHOOK_COMMON_PATH}/hooks/post-checkout .git/hooks/
 fi
\ No newline at end of file
@@ -8,7 +8,7 @@
 #
 # Description:
 #   This script removes the git config for the githook
-#   and removes the pre-commit, commit-msg and the githook file.
+#   and removes the pre-commit, commit-msg, prepare-commit-msg, post-checkout and the githook file.
 ##################################################
 
 # removes any git config settings for git hook in the global config
@@ -21,6 +21,7 @@ if [ ! -z "$(git config githook.jira)" ]; then
   git config --remove-section githook.jira
 fi
 git config --unset githook.language
+git config --global --unset githook.daemon
 
 # Remove files used by the git-jira hook
 if [ -e .git/hooks/pre-commit ]; then
@@ -31,6 +32,14 @@ if [ -e .git/hooks/commit-msg ]; then
   rm -f .git/hooks/commit-msg
 fi
 
+if [ -e .git/hooks/prepare-commit-msg ]; then
+  rm -f .git/hooks/prepare-commit-msg
+fi
+
+if [ -e .git/hooks/post-checkout ]; then
+  rm -f .git/hooks/post-checkout
+fi
+
 if [ -d .git/hooks/util ]; then
     rm -rf .git/hooks/util
 fi
\ No newline at end of file
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.hash.Hashing;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * This class is responsible for not contacting JIRA while it's down. The consecutive failures are kept in a small
+ * state file shared by all hook processes. After a number of consecutive failures the circuit opens, and requests
+ * fail at once for a cool-down which doubles for every failed attempt (30 seconds up to 10 minutes). When the
+ * cool-down has passed, a single request is let through as a probe. A successful response closes the circuit.
+ * While the circuit is closed, a request only costs reading the state file, if it exists.
+ */
+class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final String CIRCUIT_DIRECTORY = "circuits";
+    private static final int FORMAT_VERSION = 1;
+    // version, failures, open until and cool-down
+    private static final int STATE_LENGTH = 1 + 4 + 8 + 8;
+    private static final long INITIAL_COOL_DOWN = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_COOL_DOWN = TimeUnit.MINUTES.toMillis(10);
+    // File locks are held by the process, so the threads of this process take turns first
+    private static final Object THREAD_LOCK = new Object();
+
+    private final File file;
+    private final int threshold;
+
+    /**
+     * Creates the circuit breaker of a JIRA instance.
+     * @param identity the identity of the JIRA instance, e.g its address
+     * @param threshold the number of consecutive failures which opens the circuit. 0 disables the circuit breaker.
+     */
+    CircuitBreaker(String identity, int threshold) {
+        this(new File(new File(CacheDirectory.get(), CIRCUIT_DIRECTORY),
+                Hashing.sha256().hashString(identity, Charsets.UTF_8).toString().substring(0, 16)), threshold);
+    }
+
+    CircuitBreaker(File file, int threshold) {
+        this.file = file;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Checks if a request may be sent to JIRA. When the cool-down has passed, only the first caller is let
+     * through, and the others wait for the next cool-down.
+     * @return true if the request may be sent
+     */
+    boolean allowRequest() {
+        if (threshold <= 0 || read().isClosed(threshold)) {
+            return true;
+        }
+
+        synchronized (THREAD_LOCK) {
+            try (FileChannel channel = openLocked()) {
+                State state = read(channel);
+                long now = System.currentTimeMillis();
+                if (state.isClosed(threshold)) {
+                    return true;
+                }
+                if (now < state.openUntil) {
+                    return false;
+                }
+
+                // This request is the probe. The next one is allowed after another cool-down
+                write(channel, new State(state.failures, now + state.coolDown, state.coolDown));
+                logger.debug("Probing JIRA after {} failures", state.failures);
+                return true;
+            } catch (IOException e) {
+                logger.debug("Unable to update the circuit breaker {}", file);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gets the time left before the next request is let through.
+     * @return the time left in milliseconds. 0 if the circuit is closed.
+     */
+    long getRemainingCoolDown() {
+        State state = read();
+        if (threshold <= 0 || state.isClosed(threshold)) {
+            return 0;
+        }
+        return Math.max(0, state.openUntil - System.currentTimeMillis());
+    }
+
+    /**
+     * Records that JIRA answered, which closes the circuit.
+     */
+    void recordSuccess() {
+        if (threshold <= 0 || read().failures == 0) {
+            return;
+        }
+        update(state -> new State(0, 0, 0));
+    }
+
+    /**
+     * Records that JIRA couldn't be reached or didn't answer in time.
+     */
+    void recordFailure() {
+        if (threshold <= 0) {
+            return;
+        }
+
+        update(state -> {
+            int failures = state.failures + 1;
+            if (failures < threshold) {
+                return new State(failures, 0, 0);
+            }
+
+            long coolDown = state.coolDown == 0 ? INITIAL_COOL_DOWN : Math.min(state.coolDown * 2, MAX_COOL_DOWN);
+            logger.debug("JIRA failed {} times in a row, waiting {} ms", failures, coolDown);
+            return new State(failures, System.currentTimeMillis() + coolDown, coolDown);
+        });
+    }
+
+    private void update(UnaryOperator<State> change) {
+        synchronized (THREAD_LOCK) {
+            try (FileChannel channel = openLocked()) {
+                write(channel, change.apply(read(channel)));
+            } catch (IOException e) {
+                logger.debug("Unable to update the circuit breaker {}", file);
+            }
+        }
+    }
+
+    private FileChannel openLocked() throws IOException {
+        file.getParentFile().mkdirs();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            // Closing the channel releases the lock
+            channel.lock();
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private State read() {
+        if (!file.isFile()) {
+            return State.CLOSED;
+        }
+
+        try {
+            return State.decode(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+        } catch (IOException e) {
+            return State.CLOSED;
+        }
+    }
+
+    private static State read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STATE_LENGTH);
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Reads the whole state
+        }
+        buffer.flip();
+        return State.decode(buffer);
+    }
+
+    private static void write(FileChannel channel, State state) throws IOException {
+        ByteBuffer buffer = state.encode();
+        channel.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.truncate(STATE_LENGTH);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("File", file).
+                add("Threshold", threshold).
+                toString();
+    }
+
+    private static final class State {
+        static final State CLOSED = new State(0, 0, 0);
+
+        final int failures;
+        final long openUntil;
+        final long coolDown;
+
+        State(int failures, long openUntil, long coolDown) {
+            this.failures = failures;
+            this.openUntil = openUntil;
+            this.coolDown = coolDown;
+        }
+
+        boolean isClosed(int threshold) {
+            return failures < threshold;
+        }
+
+        static State decode(ByteBuffer buffer) {
+            // A missing, partial or unknown state is treated as closed
+            if (buffer.remaining() < STATE_LENGTH || buffer.get() != FORMAT_VERSION) {
+                return CLOSED;
+            }
+            return new State(buffer.getInt(), buffer.getLong(), buffer.getLong());
+        }
+
+        ByteBuffer encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(STATE_LENGTH);
+            buffer.put((byte) FORMAT_VERSION).putInt(failures).putLong(openUntil).putLong(coolDown);
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is responsible for parsing the first line of the commit message (the header) in a single pass.
+ * The header is split into words separated by whitespace. The options are read from the ends of the header:
+ * NONE as the first word overrides the commit, while -O (override the communication with JIRA) and -A
+ * (override the assignee check) are read from the last words. The words themselves are kept as positions in
+ * the header, so nothing is copied until it's asked for.
+ */
+final class CommitHeader {
+    private static final String JIRA_COMMUNICATION_OVERRIDDEN = "-O";
+    private static final String JIRA_ASSIGNEE_OVERRIDDEN = "-A";
+    private static final String JIRA_COMMIT_OVERRIDDEN = "NONE";
+
+    private final String line;
+    // The start and end of every word
+    private final int[] wordStarts;
+    private final int[] wordEnds;
+    private final int wordCount;
+    // The number of words, without the options at the end of the header
+    private final int textWordCount;
+    private final boolean commitOverridden;
+    private final boolean communicationOverridden;
+    private final boolean assigneeOverridden;
+
+    private CommitHeader(String line, int[] wordStarts, int[] wordEnds, int wordCount) {
+        this.line = line;
+        this.wordStarts = wordStarts;
+        this.wordEnds = wordEnds;
+        this.wordCount = wordCount;
+
+        commitOverridden = wordCount > 0 && wordEquals(0, JIRA_COMMIT_OVERRIDDEN);
+
+        boolean communication = false;
+        boolean assignee = false;
+        int textWords = wordCount;
+        // The first word is never an option
+        while (textWords > 1) {
+            if (wordEquals(textWords - 1, JIRA_COMMUNICATION_OVERRIDDEN)) {
+                communication = true;
+            } else if (wordEquals(textWords - 1, JIRA_ASSIGNEE_OVERRIDDEN)) {
+                assignee = true;
+            } else {
+                break;
+            }
+            textWords--;
+        }
+        communicationOverridden = communication;
+        assigneeOverridden = assignee;
+        textWordCount = textWords;
+    }
+
+    /**
+     * Parses the header of a commit message.
+     * @param line the first line of the commit message
+     * @return the parsed header
+     */
+    static CommitHeader parse(String line) {
+        if (line == null) {
+            line = "";
+        }
+
+        int[] wordStarts = new int[8];
+        int[] wordEnds = new int[8];
+        int wordCount = 0;
+        int wordStart = -1;
+
+        for (int i = 0; i <= line.length(); i++) {
+            boolean whitespace = i == line.length() || Character.isWhitespace(line.charAt(i));
+
+            if (!whitespace && wordStart < 0) {
+                wordStart = i;
+            } else if (whitespace && wordStart >= 0) {
+                if (wordCount == wordStarts.length) {
+                    wordStarts = Arrays.copyOf(wordStarts, wordCount * 2);
+                    wordEnds = Arrays.copyOf(wordEnds, wordCount * 2);
+                }
+                wordStarts[wordCount] = wordStart;
+                wordEnds[wordCount] = i;
+                wordCount++;
+                wordStart = -1;
+            }
+        }
+        return new CommitHeader(line, wordStarts, wordEnds, wordCount);
+    }
+
+    String getLine() {
+        return line;
+    }
+
+    int getWordCount() {
+        return wordCount;
+    }
+
+    int getWordStart(int index) {
+        return wordStarts[index];
+    }
+
+    int getWordEnd(int index) {
+        return wordEnds[index];
+    }
+
+    String getWord(int index) {
+        return line.substring(wordStarts[index], wordEnds[index]);
+    }
+
+    boolean isCommitOverridden() {
+        return commitOverridden;
+    }
+
+    boolean isCommunicationOverridden() {
+        return communicationOverridden;
+    }
+
+    boolean isAssigneeOverridden() {
+        return assigneeOverridden;
+    }
+
+    /**
+     * Finds the JIRA issue keys in the header.
+     * @param issueKeyMatcher the matcher for the JIRA projects
+     * @return the issue keys and their positions, in the order they occur
+     */
+    List<IssueKeyMatcher.Match> findIssueKeys(IssueKeyMatcher issueKeyMatcher) {
+        return issueKeyMatcher.findAll(line);
+    }
+
+    /**
+     * Gets the header without the options at the end, with the words separated by a single space.
+     * @param upperCaseFirstWord true if the first word is converted to upper case, e.g the JIRA issue key
+     * @return the stripped header
+     */
+    String getStrippedText(boolean upperCaseFirstWord) {
+        StringBuilder text = new StringBuilder(line.length());
+
+        for (int i = 0; i < textWordCount; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            if (i == 0 && upperCaseFirstWord) {
+                text.append(getWord(0).toUpperCase());
+            } else {
+                text.append(line, wordStarts[i], wordEnds[i]);
+            }
+        }
+        return text.toString();
+    }
+
+    private boolean wordEquals(int index, String word) {
+        return wordEnds[index] - wordStarts[index] == word.length()
+                && line.regionMatches(true, wordStarts[index], word, 0, word.length());
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Header", line).
+                add("Commit overridden", commitOverridden).
+                add("Communication overridden", communicationOverridden).
+                add("Assignee overridden", assigneeOverridden).
+                toString();
+    }
+}
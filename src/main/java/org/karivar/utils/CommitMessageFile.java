@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is responsible for reading and writing the commit message file (e.g .git/COMMIT_EDITMSG) without
+ * decoding more of it than the hook needs. Only the first line (the header) is read and decoded. The rest of the
+ * file (the body, which may be long lists of conflicts or squashed commits) is copied byte by byte from the
+ * original file when the message is written. A message is written to a temporary file next to the target, and
+ * moved in place when it's complete, so the commit message file is never half written. The last lines of the
+ * body may be read as well, to find and replace the traceability information of an earlier commit.
+ */
+final class CommitMessageFile {
+    private static final int BUFFER_SIZE = 512;
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final File file;
+    private final String header;
+    // The original bytes of the header, written as they are unless the header changes
+    private final byte[] headerBytes;
+    // The body starts with the line break after the header, and ends at the end of the file
+    private final long bodyStart;
+    private final long secondLineStart;
+    private final long length;
+
+    private CommitMessageFile(File file, byte[] headerBytes, long secondLineStart, long length) {
+        this.file = file;
+        this.headerBytes = headerBytes;
+        this.secondLineStart = secondLineStart;
+        this.length = length;
+        bodyStart = headerBytes.length;
+        header = new String(headerBytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Reads the header of the commit message file.
+     * @param file the commit message file
+     * @return the commit message file
+     * @throws java.io.FileNotFoundException if the file doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    static CommitMessageFile read(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            long length = input.getChannel().size();
+            ByteArrayOutputStream header = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            int count;
+            while ((count = input.read(buffer)) > 0) {
+                int lineBreak = indexOf(buffer, 0, count, LINE_FEED);
+                if (lineBreak >= 0) {
+                    header.write(buffer, 0, lineBreak);
+                    return create(file, header.toByteArray(), header.size() + 1, length);
+                }
+                header.write(buffer, 0, count);
+            }
+            return create(file, header.toByteArray(), length, length);
+        }
+    }
+
+    private static CommitMessageFile create(File file, byte[] headerBytes, long secondLineStart, long length) {
+        // A header ending with CR LF is read without the CR, which is kept as part of the body
+        int headerLength = headerBytes.length;
+        if (headerLength > 0 && headerBytes[headerLength - 1] == CARRIAGE_RETURN) {
+            headerLength--;
+        }
+        return new CommitMessageFile(file, Arrays.copyOf(headerBytes, headerLength), secondLineStart, length);
+    }
+
+    private static int indexOf(byte[] buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the first line of the commit message, without the line break.
+     * @return the header
+     */
+    String getHeader() {
+        return header;
+    }
+
+    boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Reads the whole commit message. Only needed when the body itself is of interest, as writing the message
+     * never decodes the body.
+     * @return the lines of the commit message
+     * @throws IOException if the file can't be read
+     */
+    List<String> readLines() throws IOException {
+        return isEmpty() ? Lists.newArrayList()
+                : com.google.common.io.Files.readLines(file, Charsets.UTF_8);
+    }
+
+    /**
+     * Reads the last lines of the body, without decoding the rest of it.
+     * @param maxBytes the maximum number of bytes read from the end of the file
+     * @return the complete lines within the bytes read, in the order they occur. The header is never included.
+     * @throws IOException if the file can't be read
+     */
+    List<Line> readLastLines(int maxBytes) throws IOException {
+        List<Line> lines = Lists.newArrayList();
+        long position = Math.max(secondLineStart, length - maxBytes);
+        if (position >= length) {
+            return lines;
+        }
+
+        // One more byte is read, to tell whether the first line read is complete
+        long start = position > secondLineStart ? position - 1 : position;
+        byte[] bytes = new byte[(int) (length - start)];
+        try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining() && input.read(buffer, start + buffer.position()) > 0) {
+                // Reads until the buffer is full
+            }
+        }
+
+        int lineStart = 0;
+        if (start < position) {
+            lineStart = indexOf(bytes, 0, bytes.length, LINE_FEED) + 1;
+            if (lineStart == 0) {
+                return lines;
+            }
+        }
+
+        while (lineStart < bytes.length) {
+            int lineBreak = indexOf(bytes, lineStart, bytes.length, LINE_FEED);
+            int lineEnd = lineBreak >= 0 ? lineBreak : bytes.length;
+            int textEnd = lineEnd > lineStart && bytes[lineEnd - 1] == CARRIAGE_RETURN ? lineEnd - 1 : lineEnd;
+            int nextLineStart = lineBreak >= 0 ? lineBreak + 1 : bytes.length;
+
+            lines.add(new Line(new String(bytes, lineStart, textEnd - lineStart, Charsets.UTF_8),
+                    start + lineStart, start + nextLineStart));
+            lineStart = nextLineStart;
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the commit message with the given header, the original body and the given lines appended at the end.
+     * @param target the file to write, e.g the commit message file itself
+     * @param newHeader the header, which replaces the original header
+     * @param appendedLines the lines appended after the body
+     * @throws IOException if the commit message can't be written. The target is left unchanged.
+     */
+    void write(File target, String newHeader, List<String> appendedLines) throws IOException {
+        write(target, newHeader, length, length, appendedLines);
+    }
+
+    /**
+     * Writes the commit message with the given header and the original body, where the given lines replace a part
+     * of the body.
+     * @param target the file to write, e.g the commit message file itself
+     * @param newHeader the header, which replaces the original header
+     * @param replacedStart the start of the replaced part of the body, which must be the start of a line
+     * @param replacedEnd the end of the replaced part of the body
+     * @param lines the lines written in place of the replaced part
+     * @throws IOException if the commit message can't be written. The target is left unchanged.
+     */
+    void write(File target, String newHeader, long replacedStart, long replacedEnd, List<String> lines)
+            throws IOException {
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path temporaryPath = Files.createTempFile(targetPath.getParent(), targetPath.getFileName() + ".", ".tmp");
+
+        try {
+            copyPermissions(targetPath, temporaryPath);
+
+            try (FileChannel output = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+                writeFully(output, newHeader.equals(header) ? headerBytes : newHeader.getBytes(Charsets.UTF_8));
+
+                try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    transfer(input, bodyStart, replacedStart, output);
+
+                    boolean endsWithLineBreak = false;
+                    if (replacedStart > bodyStart) {
+                        ByteBuffer last = ByteBuffer.allocate(1);
+                        input.read(last, replacedStart - 1);
+                        endsWithLineBreak = last.get(0) == LINE_FEED;
+                    }
+
+                    StringBuilder written = new StringBuilder();
+                    if (!endsWithLineBreak) {
+                        written.append(System.lineSeparator());
+                    }
+                    for (String line : lines) {
+                        written.append(line).append(System.lineSeparator());
+                    }
+                    writeFully(output, written.toString().getBytes(Charsets.UTF_8));
+
+                    transfer(input, replacedEnd, length, output);
+                }
+            }
+
+            try {
+                Files.move(temporaryPath, targetPath, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    private static void transfer(FileChannel input, long start, long end, FileChannel output) throws IOException {
+        long position = start;
+        while (position < end) {
+            long transferred = input.transferTo(position, end - position, output);
+            if (transferred <= 0) {
+                throw new IOException("The commit message file was changed while it was written");
+            }
+            position += transferred;
+        }
+    }
+
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        // Temporary files are only readable by the owner, while the target keeps its permissions
+        if (Files.exists(source)) {
+            try {
+                Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel output, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("File", file).
+                add("Header", header).
+                add("Length", length).
+                toString();
+    }
+
+    /**
+     * A line of the body and its position in the file.
+     */
+    static final class Line {
+        private final String text;
+        private final long start;
+        private final long end;
+
+        private Line(String text, long start, long end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Gets the text of the line, without the line break.
+         * @return the text
+         */
+        String getText() {
+            return text;
+        }
+
+        long getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the end of the line, after its line break.
+         * @return the position after the line
+         */
+        long getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).
+                    add("Text", text).
+                    add("Start", start).
+                    add("End", end).
+                    toString();
+        }
+    }
+}
@@ -7,8 +7,6 @@
  */
 package org.karivar.utils;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import org.karivar.utils.domain.BasicJiraIssue;
@@ -19,7 +17,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import com.google.common.io.Files;
+import java.time.Instant;
 
 import java.util.*;
 
@@ -31,14 +29,13 @@ import java.util.*;
 class CommitMessageManipulator {
     private final Logger logger = LoggerFactory.getLogger(CommitMessageManipulator.class);
 
-    private static final String JIRA_COMMUNICATION_OVERRIDDEN = "-O";
-    private static final String JIRA_ASSIGNEE_OVERRIDDEN = "-A";
-    private static final String JIRA_COMMIT_OVERRIDDEN = "NONE";
-
     private final ResourceBundle messages;
-    private String commitMessageFilename;
-    private List<String> commitFileContents = null;
+    private CommitMessageFile commitMessage;
+    // The traceability information of an earlier commit, e.g when the commit is amended
+    private HookTrailer existingTrailer;
     private boolean jiraIssueKeyFound;
+    private boolean jiraUnavailable;
+    private CommitHeader commitHeader;
 
     public CommitMessageManipulator(ResourceBundle bundle) {
         messages = bundle;
@@ -49,10 +46,13 @@ class CommitMessageManipulator {
         // Load the commit message file
         if (!Strings.isNullOrEmpty(filename)) {
             try {
-                File file = new File(filename);
-                commitFileContents = Files.readLines(file, Charsets.UTF_8);
-                logger.debug("The file contents are: \n\t {}", commitFileContents);
-                commitMessageFilename = filename;
+                // Only the first line is read. The rest of the message is copied as it is when it's written.
+                commitMessage = CommitMessageFile.read(new File(filename));
+                logger.debug("The first line of the commit message is: \n\t {}", commitMessage.getHeader());
+                existingTrailer = HookTrailer.find(commitMessage, messages).orElse(null);
+                if (existingTrailer != null) {
+                    logger.debug("The commit message already has traceability information {}", existingTrailer);
+                }
 
             } catch (FileNotFoundException e) {
                 logger.error(messages.getString("error.loadfile.filenotfound") + filename);
@@ -64,72 +64,114 @@ class CommitMessageManipulator {
         }
     }
 
-    boolean isCommunicationOverridden() {
-        boolean isOverridden = false;
-        if (commitFileContents != null && commitFileContents.size() > 0) {
-            String[] wordList = commitFileContents.get(0).split("\\s+");
-            String last = wordList[wordList.length - 1];
+    /**
+     * Checks whether the traceability information already in the commit message (e.g of an amended commit) can be
+     * used in place of fetching the issues from JIRA, see {@link HookTrailer#isReusable}.
+     * @param issueKeys the keys of the issues of the commit
+     * @param hookVersion the version of the hook
+     * @param now the current time
+     * @param freshnessMillis how long the fetched issues are used
+     * @return true if the traceability information can be reused
+     */
+    boolean isExistingTrailerReusable(List<String> issueKeys, String hookVersion, Instant now, long freshnessMillis) {
+        return existingTrailer != null
+                && existingTrailer.isReusable(issueKeys, isAssigneeOverridden(), hookVersion, now, freshnessMillis);
+    }
 
-            if (last.equalsIgnoreCase(JIRA_COMMUNICATION_OVERRIDDEN)) {
-                isOverridden = true;
-            }
-        }
-        return isOverridden;
+    /**
+     * Writes the commit message with the traceability information already in it, without checking the issues
+     * again. The information about the overridden options is updated.
+     * @param filename The name of the file to be written to. Not null when testing only!
+     */
+    void reuseExistingTrailer(String filename) {
+        List<String> traceabilityInformation = Lists.newArrayList("");
+        traceabilityInformation.addAll(existingTrailer.getIssueLines());
+        traceabilityInformation.addAll(getAdditionalInformation(false, isAssigneeOverridden()));
+        traceabilityInformation.add(existingTrailer.getHookLine());
+
+        logger.debug("The reused traceability information is {}", traceabilityInformation);
+        writeCommitMessage(getStrippedFirstCommitLine(), traceabilityInformation, filename);
     }
 
-    boolean isCommitOverridden() {
-        boolean isCommitOverridden = false;
-        if (commitFileContents != null && commitFileContents.size() > 0) {
-            String[] wordList = commitFileContents.get(0).split("\\s+");
+    /**
+     * Marks JIRA as unavailable for this commit, e.g because it didn't answer in time and the hook fails open.
+     * The checks are skipped, and this is recorded in the commit message.
+     */
+    void markJiraUnavailable() {
+        jiraUnavailable = true;
+    }
 
-            if (wordList.length > 0) {
-                String first = wordList[0];
+    boolean isCommunicationOverridden() {
+        return getCommitHeader().isCommunicationOverridden();
+    }
 
-                if (first.equalsIgnoreCase(JIRA_COMMIT_OVERRIDDEN)) {
-                    isCommitOverridden = true;
-                }
-            }
-        }
-        return isCommitOverridden;
+    boolean isCommitOverridden() {
+        return getCommitHeader().isCommitOverridden();
     }
 
     boolean isAssigneeOverridden() {
-        boolean isAssigneeOverridden = false;
-        if (commitFileContents != null && commitFileContents.size() > 0) {
-            String[] wordList = commitFileContents.get(0).split("\\s+");
-            String last = wordList[wordList.length - 1];
+        return getCommitHeader().isAssigneeOverridden();
+    }
 
-            if (last.equalsIgnoreCase(JIRA_ASSIGNEE_OVERRIDDEN)) {
-                isAssigneeOverridden = true;
-            }
-        }
-        return isAssigneeOverridden;
+    /**
+     * Creates the plan for which JIRA fields to fetch, based on the checks and commit message sections
+     * which are enabled for this commit.
+     * @param issueLinks the names of the JIRA issue links which are added to the commit message
+     * @return the fetch plan
+     */
+    FetchPlan getFetchPlan(List<String> issueLinks) {
+        return getFetchPlan(isAssigneeOverridden(), issueLinks);
     }
 
+    /**
+     * Creates the plan for which JIRA fields to fetch, before the commit message is loaded.
+     * @param assigneeOverridden true if assignee is overridden
+     * @param issueLinks the names of the JIRA issue links which are added to the commit message
+     * @return the fetch plan
+     */
+    static FetchPlan getFetchPlan(boolean assigneeOverridden, List<String> issueLinks) {
+        Set<FetchPlan.Requirement> requirements = EnumSet.of(FetchPlan.Requirement.SUMMARY_SECTION,
+                FetchPlan.Requirement.STATUS_CHECK, FetchPlan.Requirement.PARENT_SECTION);
+
+        if (!assigneeOverridden) {
+            requirements.add(FetchPlan.Requirement.ASSIGNEE_CHECK);
+        }
+
+        if (issueLinks != null && !issueLinks.isEmpty()) {
+            requirements.add(FetchPlan.Requirement.RELATED_SECTION);
+        }
+        return FetchPlan.of(requirements);
+    }
 
     Optional<String> getJiraIssueKeyFromCommitMessage(String jiraIssuePattern) {
-        Optional<String> jiraIssueKey = Optional.empty();
-        if (commitFileContents != null && commitFileContents.size() > 0) {
-            String firstLineOfCommitMessage = commitFileContents.get(0);
-            logger.debug("Starting getJiraIssueKeyFromCommitMessage({}, {})", firstLineOfCommitMessage, jiraIssuePattern);
+        List<String> jiraIssueKeys = getJiraIssueKeysFromCommitMessage(jiraIssuePattern);
+
+        if (jiraIssueKeys.isEmpty()) {
+            return Optional.empty();
+        }
+        // The first issue key is the main issue of the commit
+        return Optional.of(jiraIssueKeys.get(0));
+    }
+
+    /**
+     * Finds every JIRA issue key in the first line of the commit message.
+     * @param jiraIssuePattern the JIRA project keys separated by space
+     * @return the distinct issue keys in the order they occur
+     */
+    List<String> getJiraIssueKeysFromCommitMessage(String jiraIssuePattern) {
+        Set<String> jiraIssueKeys = new LinkedHashSet<>();
+        if (commitMessage != null && !commitMessage.isEmpty()) {
+            CommitHeader commitHeader = getCommitHeader();
+            logger.debug("Starting getJiraIssueKeysFromCommitMessage({}, {})", commitHeader.getLine(),
+                    jiraIssuePattern);
 
-            if (!Strings.isNullOrEmpty(firstLineOfCommitMessage)) {
+            if (!Strings.isNullOrEmpty(commitHeader.getLine())) {
 
                 if (!Strings.isNullOrEmpty(jiraIssuePattern)) {
-                    Splitter jiraPatternSplitter = Splitter.on(" ");
-                    List<String> commitLineWords = jiraPatternSplitter.splitToList(firstLineOfCommitMessage);
-                    List<String> jiraIssuePatterns = jiraPatternSplitter.splitToList(jiraIssuePattern);
-
-                    if (!commitLineWords.isEmpty()) {
-                        for (String pattern : jiraIssuePatterns) {
-                            for (String word : commitLineWords) {
-                                if (word.toUpperCase().startsWith(pattern.toUpperCase())) {
-                                    jiraIssueKey = Optional.of(word.toUpperCase());
-                                    jiraIssueKeyFound = true;
-                                    break;
-                                }
-                            }
-                        }
+                    for (IssueKeyMatcher.Match match : commitHeader.findIssueKeys(
+                            IssueKeyMatcher.forProjectKeys(jiraIssuePattern))) {
+                        jiraIssueKeys.add(match.getKey());
+                        jiraIssueKeyFound = true;
                     }
                 } else {
                     logger.error(messages.getString("githook.jiraissue.pattern.notfound"));
@@ -139,7 +181,7 @@ class CommitMessageManipulator {
             }
         }
 
-        return jiraIssueKey;
+        return new ArrayList<>(jiraIssueKeys);
     }
 
     /**
@@ -147,10 +189,14 @@ class CommitMessageManipulator {
      * @return the first line without any options
      */
     List<String> getStrippedCommitMessage() {
-        ArrayList<String> strippedCommitMessage = Lists.newArrayList();
-        if (commitFileContents != null && commitFileContents.size() > 0) {
-            strippedCommitMessage = (ArrayList<String>) commitFileContents;
-            strippedCommitMessage.set(0, getStrippedFirstCommitLine(strippedCommitMessage.get(0)));
+        List<String> strippedCommitMessage = Lists.newArrayList();
+        if (commitMessage != null && !commitMessage.isEmpty()) {
+            try {
+                strippedCommitMessage = commitMessage.readLines();
+                strippedCommitMessage.set(0, getStrippedFirstCommitLine());
+            } catch (IOException e) {
+                logger.error(messages.getString("loadfile.commit.io"));
+            }
         }
 
         return strippedCommitMessage;
@@ -175,12 +221,27 @@ class CommitMessageManipulator {
      */
     void manipulateCommitMessage(JiraIssue populatedIssue, String hookInformation, String filename,
                                         boolean communicationOverridden, boolean assigneeOverridden) {
-        List<String> manipulatedMessage = getStrippedCommitMessage();
-        if (manipulatedMessage != null && manipulatedMessage.size() > 0 ) {
-            manipulatedMessage = addTraceabilityInformationToMessage(manipulatedMessage, populatedIssue,
-                    hookInformation, communicationOverridden, assigneeOverridden);
-            logger.debug("The manipulated message is {}", manipulatedMessage);
-            writeCommitMessage(manipulatedMessage, filename);
+        manipulateCommitMessageForIssues(toList(populatedIssue), hookInformation, filename,
+                communicationOverridden, assigneeOverridden);
+    }
+
+    /**
+     * Manipulates the commit message as {@link #manipulateCommitMessage(JiraIssue, String, String, boolean,
+     * boolean)}, adding the summary, parent issue and related issues of every given JIRA issue. When there are
+     * several issues, the summary is prefixed with the issue key.
+     * @param populatedIssues the populated JIRA issues
+     * @param hookInformation string containing information about the hook
+     * @param filename The name of the file to be written to. Not null when testing only!
+     * @param communicationOverridden true if the communication with JIRA is overridden
+     * @param assigneeOverridden true if assignee is overrridden
+     */
+    void manipulateCommitMessageForIssues(List<JiraIssue> populatedIssues, String hookInformation, String filename,
+                                          boolean communicationOverridden, boolean assigneeOverridden) {
+        if (commitMessage != null && !commitMessage.isEmpty()) {
+            List<String> traceabilityInformation = getTraceabilityInformation(populatedIssues, hookInformation,
+                    communicationOverridden, assigneeOverridden);
+            logger.debug("The traceability information is {}", traceabilityInformation);
+            writeCommitMessage(getStrippedFirstCommitLine(), traceabilityInformation, filename);
         } else {
             logger.error("The commit message is empty");
         }
@@ -196,45 +257,70 @@ class CommitMessageManipulator {
      */
     boolean checkStateAndManipulateCommitMessage(JiraIssue populatedIssue, boolean jiraCommunicationOverridden,
                                                  String filename, String hookVersion) {
-        // check status against allowed statues
-        boolean statusOK = checkAllowedStatus(populatedIssue);
+        return checkStateAndManipulateCommitMessage(toList(populatedIssue), jiraCommunicationOverridden,
+                filename, hookVersion);
+    }
 
-        boolean assigneeOK;
+    /**
+     * Checks the status and assignee of every given JIRA issue. The commit message is only manipulated if all
+     * of them accept the commit.
+     * @param populatedIssues the populated JIRA issues. Empty if no issue is found.
+     * @param jiraCommunicationOverridden true if the communication with JIRA is overridden
+     * @param filename The name of the file to be written to. Not null when testing only!
+     * @param hookVersion The version number of the hook
+     * @return true if everything went fine. Otherwise false is returned.
+     */
+    boolean checkStateAndManipulateCommitMessage(List<JiraIssue> populatedIssues,
+                                                 boolean jiraCommunicationOverridden,
+                                                 String filename, String hookVersion) {
+        // Without any issue, the checks decide whether a commit without an issue is accepted
+        List<JiraIssue> checkedIssues = populatedIssues.isEmpty()
+                ? Collections.singletonList(null) : populatedIssues;
+        boolean multipleIssues = checkedIssues.size() > 1;
         boolean assigneeOverridden = isAssigneeOverridden();
-        if (!assigneeOverridden) {
-            // check assignee
-            assigneeOK = checkAssignee(populatedIssue);
-        } else if (isCommitOverridden()) {
-            // the commit is overridden. Thus assignee is not found, but OK anyway
-            assigneeOK = true;
-        } else {
-            assigneeOK = assigneeOverridden;
-        }
-
-        if (statusOK && assigneeOK) {
-            // Status is OK. Start manipulating commit message and accept commits to repo
-            manipulateCommitMessage(populatedIssue, getHookInformation(hookVersion), filename,
-                    jiraCommunicationOverridden, assigneeOverridden);
+        boolean allOK = true;
+
+        for (JiraIssue populatedIssue : checkedIssues) {
+            // check status against allowed statues
+            boolean statusOK = checkAllowedStatus(populatedIssue);
+
+            boolean assigneeOK;
+            if (!assigneeOverridden) {
+                // check assignee
+                assigneeOK = checkAssignee(populatedIssue);
+            } else if (isCommitOverridden()) {
+                // the commit is overridden. Thus assignee is not found, but OK anyway
+                assigneeOK = true;
+            } else {
+                assigneeOK = assigneeOverridden;
+            }
 
-        } else {
-            // Status is not OK.
-            if (!statusOK) {
-                if (populatedIssue != null) {
-                    logger.info(messages.getString("commitnotallowedstatus")
-                            + populatedIssue.getStatus());
-                }
+            if (!statusOK && populatedIssue != null) {
+                logger.info(getIssuePrefix(populatedIssue, multipleIssues)
+                        + messages.getString("commitnotallowedstatus") + populatedIssue.getStatus());
+            }
 
-                if (!assigneeOK) {
-                    if (populatedIssue.getAssignee() != null && populatedIssue.getAssignee().isPresent()) {
-                        logger.info(messages.getString("commitnotallowedassignee")
-                                + populatedIssue.getAssignee().get().getDisplayName());
-                    } else {
-                        logger.info(messages.getString("commitnotallowedassigneeunknown"));
-                    }
+            if (!assigneeOK) {
+                if (populatedIssue.getAssignee() != null && populatedIssue.getAssignee().isPresent()) {
+                    logger.info(getIssuePrefix(populatedIssue, multipleIssues)
+                            + messages.getString("commitnotallowedassignee")
+                            + populatedIssue.getAssignee().get().getDisplayName());
+                } else {
+                    logger.info(getIssuePrefix(populatedIssue, multipleIssues)
+                            + messages.getString("commitnotallowedassigneeunknown"));
                 }
             }
+
+            allOK &= statusOK && assigneeOK;
+        }
+
+        if (!allOK) {
             return false;
         }
+
+        // Status is OK. Start manipulating commit message and accept commits to repo
+        manipulateCommitMessageForIssues(populatedIssues, getHookInformation(hookVersion, populatedIssues), filename,
+                jiraCommunicationOverridden, assigneeOverridden);
         return true;
     }
 
@@ -257,16 +343,23 @@ class CommitMessageManipulator {
         return issueKey;
     }
 
-    private void writeCommitMessage(List<String> commitFileContents, String filename) {
+    private void writeCommitMessage(String header, List<String> traceabilityInformation, String filename) {
         File file;
         // Filename is not null for testing
         if (Strings.isNullOrEmpty(filename)) {
-            file = new File(commitMessageFilename);
+            file = commitMessage.getFile();
         } else {
             file = new File(filename);
         }
         try {
-            Files.asCharSink(file, Charsets.UTF_8).writeLines(commitFileContents);
+            // The body is copied from the original file. The traceability information replaces the information of
+            // an earlier commit, or is appended.
+            if (existingTrailer != null) {
+                commitMessage.write(file, header, existingTrailer.getStart(), existingTrailer.getEnd(),
+                        traceabilityInformation);
+            } else {
+                commitMessage.write(file, header, traceabilityInformation);
+            }
         } catch (IOException e) {
             logger.error(messages.getString("writefile.commit.io"), e);
         }
@@ -274,7 +367,7 @@ class CommitMessageManipulator {
 
     private boolean checkAllowedStatus(JiraIssue populatedIssue) {
 
-        if (isCommunicationOverridden()) {
+        if (isCommunicationOverridden() || jiraUnavailable) {
             return true;
         }
 
@@ -301,11 +394,19 @@ class CommitMessageManipulator {
         return false;
     }
 
-    private String getHookInformation(String version) {
-        return messages.getString("commit.convention.hookinformation") + version;
+    private String getHookInformation(String version, List<JiraIssue> populatedIssues) {
+        List<String> issueKeys = Lists.newArrayListWithCapacity(populatedIssues.size());
+        for (JiraIssue populatedIssue : populatedIssues) {
+            issueKeys.add(populatedIssue.getKey());
+        }
+        return HookTrailer.getHookInformation(messages, version, issueKeys, Instant.now());
     }
 
     private boolean checkAssignee(JiraIssue populatedIssue) {
+        if (jiraUnavailable) {
+            return true;
+        }
+
         if (populatedIssue != null
                 && populatedIssue.getAssignee() != null
                 && populatedIssue.getAssignee().isPresent()) {
@@ -322,25 +423,29 @@ class CommitMessageManipulator {
         return false;
     }
 
-    private List<String> addTraceabilityInformationToMessage(final List<String> manipulatedMessage,
-                                                             JiraIssue populatedIssue, String hookInformation,
-                                                             boolean communicationOverridden,
-                                                             boolean assigneeOverridden) {
-        ArrayList<String> addedTraceabilityMessage = (ArrayList<String>) manipulatedMessage;
+    private List<String> getTraceabilityInformation(List<JiraIssue> populatedIssues,
+                                                    String hookInformation,
+                                                    boolean communicationOverridden,
+                                                    boolean assigneeOverridden) {
+        List<String> addedTraceabilityMessage = Lists.newArrayList();
         addedTraceabilityMessage.add("");
-        String summaryInfo = getSummaryInformation(populatedIssue);
+        boolean multipleIssues = populatedIssues.size() > 1;
 
-        if (summaryInfo !=null) {
-            addedTraceabilityMessage.add(summaryInfo);
-        }
+        for (JiraIssue populatedIssue : populatedIssues) {
+            String summaryInfo = getSummaryInformation(populatedIssue, multipleIssues);
 
-        if (populatedIssue != null && populatedIssue.isSubtask()) {
-            addedTraceabilityMessage.add(getParentIssueInformation(populatedIssue));
-        }
+            if (summaryInfo != null) {
+                addedTraceabilityMessage.add(summaryInfo);
+            }
+
+            if (populatedIssue != null && populatedIssue.isSubtask()) {
+                addedTraceabilityMessage.add(getParentIssueInformation(populatedIssue));
+            }
 
-        List<String> relatedIssues = getRelatedIssuesInformation(populatedIssue);
-        if (relatedIssues != null) {
-            addedTraceabilityMessage.addAll(relatedIssues);
+            List<String> relatedIssues = getRelatedIssuesInformation(populatedIssue);
+            if (relatedIssues != null) {
+                addedTraceabilityMessage.addAll(relatedIssues);
+            }
         }
 
         List<String> additionalInformation = getAdditionalInformation(communicationOverridden, assigneeOverridden);
@@ -355,13 +460,25 @@ class CommitMessageManipulator {
         return addedTraceabilityMessage;
     }
 
-    private String getSummaryInformation(JiraIssue populatedIssue) {
+    private String getSummaryInformation(JiraIssue populatedIssue, boolean multipleIssues) {
         if (populatedIssue != null) {
-            return messages.getString("commit.convention.summary") + populatedIssue.getSummary();
+            return messages.getString("commit.convention.summary") + getIssuePrefix(populatedIssue, multipleIssues)
+                    + populatedIssue.getSummary();
         }
         return null;
     }
 
+    private static String getIssuePrefix(JiraIssue populatedIssue, boolean multipleIssues) {
+        return multipleIssues && populatedIssue != null ? populatedIssue.getKey() + " " : "";
+    }
+
+    private static List<JiraIssue> toList(JiraIssue populatedIssue) {
+        if (populatedIssue == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(populatedIssue);
+    }
+
     private String getParentIssueInformation(JiraIssue populatedIssue) {
         if (populatedIssue.getParentIssue() != null && populatedIssue.getParentIssue().isPresent()) {
             BasicJiraIssue parent = populatedIssue.getParentIssue().get();
@@ -399,35 +516,31 @@ class CommitMessageManipulator {
             additionalInfo.add(messages.getString("commit.convention.assigneeoverridden"));
         }
 
+        if (jiraUnavailable) {
+            additionalInfo.add(messages.getString("commit.convention.jiraunavailable"));
+        }
+
         return additionalInfo;
     }
 
-    private String getStrippedFirstCommitLine(final String firstLine) {
-        List<String> arrayList = Collections.singletonList(firstLine);
-        String[] wordList = arrayList.get(0).split("\\s+");
-
-        if (isCommitOverridden() || isCommunicationOverridden() || isAssigneeOverridden() || jiraIssueKeyFound) {
-            wordList[0] = wordList[0].toUpperCase();
-        }
+    private String getStrippedFirstCommitLine() {
+        CommitHeader commitHeader = getCommitHeader();
+        return commitHeader.getStrippedText(commitHeader.isCommitOverridden()
+                || commitHeader.isCommunicationOverridden() || commitHeader.isAssigneeOverridden()
+                || jiraIssueKeyFound);
+    }
 
-        // Have to iterate through all words in the 1st line of the commit message
-        // and remove the options
-        for (int i = 1; i < wordList.length; i++) {
-            String word = wordList[i];
-            // Assignee
-            if (word.equalsIgnoreCase(JIRA_ASSIGNEE_OVERRIDDEN)) {
-                wordList = Arrays.copyOf(wordList, wordList.length-1);
-            }
+    /**
+     * Gets the parsed first line of the commit message. The line is only parsed again if it's replaced.
+     * @return the parsed first line
+     */
+    private CommitHeader getCommitHeader() {
+        String firstLine = commitMessage != null ? commitMessage.getHeader() : "";
 
-            // communication with JIRA
-            if (word.equalsIgnoreCase(JIRA_COMMUNICATION_OVERRIDDEN)) {
-                wordList = Arrays.copyOf(wordList, wordList.length-1);
-            }
+        // Comparing the identity is enough to notice that the line is replaced
+        if (commitHeader == null || commitHeader.getLine() != firstLine) {
+            commitHeader = CommitHeader.parse(firstLine);
         }
-
-        return String.join(" ", wordList);
+        return commitHeader;
     }
 }
-
-
-
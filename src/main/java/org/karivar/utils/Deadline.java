@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for keeping track of the time left to communicate with JIRA for a single commit.
+ * Every request gets its timeouts from the time left, so the commit never waits longer than the budget in
+ * total, however many requests it makes. A single request never gets all the time left, so there is time for
+ * the requests following it (e.g a hedged request or the search for the summaries of related issues).
+ */
+final class Deadline {
+    // The share of the time left which is spent on setting up a connection
+    private static final int CONNECT_SHARE = 3;
+    // The share of the time left which is kept for the requests following a request
+    private static final int RESERVE_SHARE = 4;
+
+    private final long budgetMillis;
+    private final long expiresNanos;
+
+    private Deadline(long budgetMillis) {
+        this.budgetMillis = budgetMillis;
+        expiresNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * Creates a deadline which expires after the given budget.
+     * @param budgetMillis the budget in milliseconds
+     * @return the deadline
+     */
+    static Deadline after(long budgetMillis) {
+        return new Deadline(budgetMillis);
+    }
+
+    long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Gets the time left.
+     * @return the time left in milliseconds. 0 if the deadline has expired.
+     */
+    long getRemainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresNanos - System.nanoTime()));
+    }
+
+    boolean isExpired() {
+        return getRemainingMillis() == 0;
+    }
+
+    /**
+     * Gets the timeout for setting up a connection. The rest of the time left is kept for the TLS handshake
+     * and for reading the response.
+     * @return the timeout in milliseconds, at least 1
+     */
+    int getConnectTimeoutMillis() {
+        return toTimeout(getRemainingMillis() / CONNECT_SHARE);
+    }
+
+    /**
+     * Gets the timeout for reading from a connection, which is the time left except the reserve for the
+     * requests following this one.
+     * @return the timeout in milliseconds, at least 1
+     */
+    int getReadTimeoutMillis() {
+        long remainingMillis = getRemainingMillis();
+        return toTimeout(remainingMillis - remainingMillis / RESERVE_SHARE);
+    }
+
+    private static int toTimeout(long millis) {
+        // A timeout of 0 means forever to the JDK
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, millis));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Budget", budgetMillis).
+                add("Remaining", getRemainingMillis()).
+                toString();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * This class is responsible for deciding which JIRA fields to fetch. Every check and every section of the
+ * commit message is a {@link Requirement} listing the fields it reads, and only the fields of the enabled
+ * requirements are requested.
+ */
+class FetchPlan {
+
+    /**
+     * The checks and commit message sections which need data from JIRA.
+     */
+    enum Requirement {
+        SUMMARY_SECTION("summary"),
+        STATUS_CHECK("status", "issuetype"),
+        ASSIGNEE_CHECK("assignee"),
+        PARENT_SECTION("issuetype", "parent"),
+        RELATED_SECTION("issuelinks");
+
+        private final ImmutableSet<String> fields;
+
+        Requirement(String... fields) {
+            this.fields = ImmutableSet.copyOf(fields);
+        }
+
+        ImmutableSet<String> getFields() {
+            return fields;
+        }
+    }
+
+    private final ImmutableSet<Requirement> requirements;
+    private final ImmutableSortedSet<String> fields;
+
+    private FetchPlan(Collection<Requirement> requirements) {
+        this.requirements = ImmutableSet.copyOf(requirements);
+
+        ImmutableSortedSet.Builder<String> fieldsBuilder = ImmutableSortedSet.naturalOrder();
+        for (Requirement requirement : requirements) {
+            fieldsBuilder.addAll(requirement.getFields());
+        }
+        this.fields = fieldsBuilder.build();
+    }
+
+    private FetchPlan(Collection<Requirement> requirements, Collection<String> fields) {
+        this.requirements = ImmutableSet.copyOf(requirements);
+        this.fields = ImmutableSortedSet.copyOf(fields);
+    }
+
+    /**
+     * Creates a plan covering the given requirements.
+     * @param requirements the enabled checks and commit message sections
+     * @return the plan
+     */
+    static FetchPlan of(Collection<Requirement> requirements) {
+        return new FetchPlan(requirements);
+    }
+
+    /**
+     * Creates a plan covering every check and commit message section.
+     * @return the plan
+     */
+    static FetchPlan all() {
+        return new FetchPlan(EnumSet.allOf(Requirement.class));
+    }
+
+    /**
+     * Creates a plan for fetching only some of the planned fields, e.g those which aren't cached.
+     * @param remainingFields the fields to fetch
+     * @return the plan
+     */
+    FetchPlan restrictTo(Set<String> remainingFields) {
+        return new FetchPlan(requirements, Sets.intersection(fields, remainingFields));
+    }
+
+    boolean requires(Requirement requirement) {
+        return requirements.contains(requirement);
+    }
+
+    Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Gets the query parameters which make JIRA return only the planned fields.
+     * @return the query parameters, e.g fields=assignee,status
+     */
+    String toQueryParameters() {
+        return "fields=" + Joiner.on(',').join(fields);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Requirements", requirements).
+                add("Fields", fields).
+                toString();
+    }
+}
@@ -7,19 +7,32 @@
  */
 package org.karivar.utils;
 
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * This class is responsible for retrieving information from the local and global
- * git configuration
+ * git configuration. The configuration files are read in-process by {@link GitConfigParser}.
+ * Git itself is only asked if the configuration contains anything the parser doesn't understand.
+ * The result is kept in a {@link SnapshotCache} until any of the configuration files change.
  */
 class GitConfig {
     private static final Logger logger = LoggerFactory.getLogger(GitConfig.class);
@@ -29,6 +42,56 @@ class GitConfig {
     private static final String JIRA_ADDRESS = "githook.jira.address";
     private static final String GIT_HOOK_LANGUAGE_SETTINGS = "githook.language";
     private static final String JIRA_PROJECTS = "githook.jira.projectkey";
+    private static final String CACHE_TIME_TO_LIVE = "githook.cache.%sttl";
+    private static final String JIRA_PARALLELISM = "githook.jira.parallelism";
+    private static final String JIRA_TRANSPORT = "githook.jira.transport";
+    private static final String JIRA_TIMEOUT = "githook.jira.timeoutms";
+    private static final long DEFAULT_JIRA_TIMEOUT = 10000;
+    private static final String JIRA_TIMEOUT_POLICY = "githook.jira.timeoutpolicy";
+    private static final String FAIL_OPEN_POLICY = "open";
+    private static final String JIRA_HEDGE = "githook.jira.hedge";
+    private static final String JIRA_CIRCUIT_BREAKER = "githook.jira.circuitbreaker";
+    private static final int DEFAULT_JIRA_CIRCUIT_BREAKER = 3;
+    private static final int DEFAULT_JIRA_PARALLELISM = 4;
+
+    private static final String SNAPSHOT_NAME = "gitconfig";
+
+    private static final ThreadLocal<File> workingDirectory = new ThreadLocal<>();
+    private static final Map<File, GitConfigSnapshot> snapshots = Maps.newHashMap();
+    private static final Set<File> unsupportedDirectories = Sets.newHashSet();
+    private static SnapshotWatcher snapshotWatcher;
+
+    /**
+     * Runs the given action with the git configuration of the given directory. This is used when the hook runs
+     * as a daemon on behalf of several repositories. The directory only applies to the current thread, so every
+     * task of a commit which runs on another thread must be given the directory as well. When no directory is
+     * given, the current directory of the process is used.
+     * @param directory the root directory of the repository, or null for the current directory
+     * @param action the action which reads the git configuration
+     * @return the result of the action
+     */
+    static <T> T withWorkingDirectory(File directory, Supplier<T> action) {
+        File previousDirectory = workingDirectory.get();
+        workingDirectory.set(directory);
+        try {
+            return action.get();
+        } finally {
+            if (previousDirectory != null) {
+                workingDirectory.set(previousDirectory);
+            } else {
+                workingDirectory.remove();
+            }
+        }
+    }
+
+    /**
+     * Keeps snapshots of the git configuration in memory until the watcher reports that any of the
+     * configuration files have changed. Used by long-running modes of the hook.
+     * @param watcher the watcher
+     */
+    static synchronized void watchForChanges(SnapshotWatcher watcher) {
+        snapshotWatcher = watcher;
+    }
 
     /**
      * Gets the Jira username from the global git configuration
@@ -109,22 +172,188 @@ class GitConfig {
         return null;
     }
 
+    /**
+     * Gets how the hook communicates with JIRA, either http (the default) or jrjc (the JIRA REST Java client)
+     * @return the JIRA transport or null if none is configured
+     */
+    static String getJiraTransport() {
+        return getString(JIRA_TRANSPORT);
+    }
+
+    /**
+     * Gets how long a commit may wait for JIRA in total, githook.jira.timeoutMs
+     * @return the timeout in milliseconds, at least 1. 10 seconds if none is configured.
+     */
+    static long getJiraTimeout() {
+        return getLong(JIRA_TIMEOUT, DEFAULT_JIRA_TIMEOUT, 1);
+    }
+
+    /**
+     * Checks if commits are accepted without checks when JIRA doesn't answer in time. This is the case when
+     * githook.jira.timeoutPolicy is set to open. Otherwise such commits are rejected.
+     * @return true if the hook fails open
+     */
+    static boolean isJiraFailOpen() {
+        String value = getString(JIRA_TIMEOUT_POLICY);
+        return value != null && FAIL_OPEN_POLICY.equalsIgnoreCase(value.trim());
+    }
+
+    /**
+     * Checks if slow requests to JIRA are sent once more, githook.jira.hedge
+     * @return true if requests are hedged
+     */
+    static boolean isJiraHedgingEnabled() {
+        return getBoolean(JIRA_HEDGE, false);
+    }
+
+    /**
+     * Gets the number of consecutive failures to reach JIRA before the hook stops trying for a while,
+     * githook.jira.circuitBreaker
+     * @return the number of failures. 3 if none is configured, and 0 if the circuit breaker is disabled.
+     */
+    static int getJiraCircuitBreakerThreshold() {
+        return getInt(JIRA_CIRCUIT_BREAKER, DEFAULT_JIRA_CIRCUIT_BREAKER, 0);
+    }
+
+    /**
+     * Gets the maximum number of JIRA issues which are fetched at the same time
+     * @return the configured number, at least 1. 4 if none is configured.
+     */
+    static int getJiraParallelism() {
+        return getInt(JIRA_PARALLELISM, DEFAULT_JIRA_PARALLELISM, 1);
+    }
+
+    /**
+     * Gets how long cached JIRA data of the given kind is used before it's fetched again
+     * @param kind the kind of data, e.g volatile for githook.cache.volatilettl
+     * @param defaultSeconds the time to live if none is configured
+     * @return the time to live in seconds. 0 disables caching of this kind of data.
+     */
+    static long getCacheTimeToLive(String kind, long defaultSeconds) {
+        return getLong(String.format(CACHE_TIME_TO_LIVE, kind), defaultSeconds, 0);
+    }
+
+    private static String getString(String key) {
+        try {
+            return getValueFromGitConfig(key, false, false);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return null;
+    }
+
+    private static long getLong(String key, long defaultValue, long minimum) {
+        String value = getString(key);
+
+        if (value != null) {
+            try {
+                return Math.max(minimum, Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("The value of {} isn't a number", key);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int getInt(String key, int defaultValue, int minimum) {
+        return Ints.saturatedCast(getLong(key, defaultValue, minimum));
+    }
+
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
 
     private static String getValueFromGitConfig(String key, boolean isGlobalElement, boolean multipleFetches)
             throws InterruptedException, IOException {
-        String command = "git config ";
+        // The training commit is configured by system properties, but nothing else may override the git
+        // configuration, e.g the JIRA credentials
+        if (Boolean.getBoolean(StartupTrainer.TRAINING_PROPERTY)) {
+            String overriddenValue = System.getProperty(key);
+            if (overriddenValue != null) {
+                return overriddenValue;
+            }
+        }
+
+        GitConfigSnapshot currentSnapshot = getSnapshot();
+        if (currentSnapshot != null) {
+            return currentSnapshot.getValue(key, isGlobalElement, multipleFetches);
+        }
+
+        return forkGitConfig(key, isGlobalElement, multipleFetches);
+    }
+
+    /**
+     * Gets the snapshot of the git configuration. The configuration is only read once.
+     * @return the snapshot or null if the configuration must be read by git itself
+     */
+    private static synchronized GitConfigSnapshot getSnapshot() {
+        File directory = getWorkingDirectory().getAbsoluteFile();
+        GitConfigSnapshot snapshot = snapshots.get(directory);
+
+        if (snapshot == null && !unsupportedDirectories.contains(directory)) {
+            snapshot = loadSnapshot(directory);
+
+            if (snapshot != null) {
+                snapshots.put(directory, snapshot);
+                if (snapshotWatcher != null) {
+                    snapshotWatcher.watch(snapshot.getSources(), () -> invalidateSnapshot(directory));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static GitConfigSnapshot loadSnapshot(File directory) {
+        GitConfigParser parser = new GitConfigParser(new File(System.getProperty("user.home")), System.getenv());
+
+        try {
+            SnapshotCache cache = new SnapshotCache(SNAPSHOT_NAME, parser.getIdentity(directory));
+            Optional<ImmutableListMultimap<String, String>> entries = cache.load();
+
+            if (entries.isPresent()) {
+                return GitConfigSnapshot.fromEntries(entries.get());
+            }
+
+            GitConfigSnapshot snapshot = parser.parse(directory);
+            cache.store(snapshot.getSources(), snapshot.toEntries());
+            return snapshot;
+        } catch (GitConfigParser.UnsupportedConfigException e) {
+            logger.debug("Falling back to git config: {}", e.getMessage());
+            unsupportedDirectories.add(directory);
+        }
+        return null;
+    }
+
+    private static File getWorkingDirectory() {
+        File directory = workingDirectory.get();
+        return directory != null ? directory : new File(".");
+    }
+
+    private static synchronized void invalidateSnapshot(File directory) {
+        logger.debug("The git configuration of {} has changed", directory);
+        snapshots.remove(directory);
+    }
+
+    private static String forkGitConfig(String key, boolean isGlobalElement, boolean multipleFetches)
+            throws InterruptedException, IOException {
+        List<String> command = Lists.newArrayList("git", "config");
 
         if (isGlobalElement) {
-            command += "--global ";
+            command.add("--global");
         }
 
         if (multipleFetches) {
-            command += "--get-all ";
+            command.add("--get-all");
         }
 
-        command += key;
-        Runtime runtime = Runtime.getRuntime();
-        Process process = runtime.exec(command);
+        command.add(key);
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+
+        processBuilder.directory(getWorkingDirectory());
+        Process process = processBuilder.start();
         int errorCode = process.waitFor();
 
         if (errorCode == 0) {
@@ -0,0 +1,611 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * This class is responsible for reading the git configuration files without forking git. All githook.* keys
+ * of the system, global, local and worktree configuration are read in a single pass, including the files
+ * given by [include] and [includeIf]. Any construct which isn't understood results in an
+ * {@link UnsupportedConfigException}, in which case git itself must be asked.
+ */
+class GitConfigParser {
+    private static final Logger logger = LoggerFactory.getLogger(GitConfigParser.class);
+
+    private static final String HOOK_SECTION = "githook";
+    private static final String GITDIR_PREFIX = "gitdir: ";
+    private static final int MAX_INCLUDE_DEPTH = 10;
+
+    private final File homeDirectory;
+    private final Map<String, String> environment;
+
+    private ListMultimap<String, String> globalValues;
+    private ListMultimap<String, String> values;
+    private List<File> sources;
+    private File gitDirectory;
+    private boolean worktreeConfig;
+
+    /**
+     * Creates a parser.
+     * @param homeDirectory the home directory of the user
+     * @param environment the environment variables, e.g System.getenv()
+     */
+    GitConfigParser(File homeDirectory, Map<String, String> environment) {
+        this.homeDirectory = homeDirectory;
+        this.environment = environment;
+    }
+
+    /**
+     * Reads the git configuration as seen from the given directory.
+     * @param workingDirectory a directory inside the repository
+     * @return an immutable snapshot of the githook.* keys, including every file which was examined
+     * @throws UnsupportedConfigException if the configuration contains anything the parser doesn't understand
+     */
+    GitConfigSnapshot parse(File workingDirectory) throws UnsupportedConfigException {
+        checkEnvironment();
+        globalValues = ArrayListMultimap.create();
+        values = ArrayListMultimap.create();
+        sources = Lists.newArrayList();
+        worktreeConfig = false;
+        gitDirectory = findGitDirectory(workingDirectory.getAbsoluteFile());
+
+        if (!environment.containsKey("GIT_CONFIG_NOSYSTEM")) {
+            readFile(new File("/etc/gitconfig"), false, 0);
+        }
+
+        for (File globalFile : getGlobalFiles()) {
+            readFile(globalFile, true, 0);
+        }
+
+        if (gitDirectory != null) {
+            File commonDirectory = getCommonDirectory(gitDirectory);
+            readFile(new File(commonDirectory, "config"), false, 0);
+
+            if (worktreeConfig) {
+                readFile(new File(gitDirectory, "config.worktree"), false, 0);
+            }
+        }
+        return new GitConfigSnapshot(globalValues, values, sources);
+    }
+
+    /**
+     * Gets a description of everything besides the contents of the configuration files which decides the
+     * result of {@link #parse(File)}. Used to identify a cached snapshot.
+     * @param workingDirectory a directory inside the repository
+     * @return the identity
+     * @throws UnsupportedConfigException if the configuration is given by the environment
+     */
+    String getIdentity(File workingDirectory) throws UnsupportedConfigException {
+        checkEnvironment();
+        return Joiner.on('|').useForNull("").join(workingDirectory.getAbsolutePath(), homeDirectory,
+                environment.get("GIT_DIR"), environment.get("GIT_CONFIG_GLOBAL"),
+                environment.get("XDG_CONFIG_HOME"), environment.get("GIT_CONFIG_NOSYSTEM"));
+    }
+
+    private void checkEnvironment() throws UnsupportedConfigException {
+        if (environment.containsKey("GIT_CONFIG_PARAMETERS") || environment.containsKey("GIT_CONFIG_COUNT")
+                || environment.containsKey("GIT_CONFIG")) {
+            throw new UnsupportedConfigException("The git configuration is given by the environment");
+        }
+    }
+
+    /**
+     * Gets the git directory (e.g .git) of the repository containing the given directory. Linked worktrees are
+     * supported, i.e .git may be a file pointing to the real git directory.
+     * @param workingDirectory a directory inside the repository
+     * @return the git directory or null if not inside a repository
+     * @throws UnsupportedConfigException if the .git file can't be understood
+     */
+    File findGitDirectory(File workingDirectory) throws UnsupportedConfigException {
+        String gitDirEnvironment = environment.get("GIT_DIR");
+        if (!Strings.isNullOrEmpty(gitDirEnvironment)) {
+            return resolve(workingDirectory, gitDirEnvironment);
+        }
+
+        for (File directory = workingDirectory; directory != null; directory = directory.getParentFile()) {
+            File dotGit = new File(directory, ".git");
+
+            if (dotGit.isDirectory()) {
+                return dotGit;
+            }
+
+            if (dotGit.isFile()) {
+                addSource(dotGit);
+                String firstLine = readFirstLine(dotGit);
+                if (firstLine == null || !firstLine.startsWith(GITDIR_PREFIX)) {
+                    throw new UnsupportedConfigException("Unknown contents of " + dotGit);
+                }
+                return resolve(directory, firstLine.substring(GITDIR_PREFIX.length()).trim());
+            }
+        }
+        return null;
+    }
+
+    private File getCommonDirectory(File gitDir) throws UnsupportedConfigException {
+        File commonDirFile = new File(gitDir, "commondir");
+        addSource(commonDirFile);
+
+        if (commonDirFile.isFile()) {
+            String commonDir = readFirstLine(commonDirFile);
+            if (Strings.isNullOrEmpty(commonDir)) {
+                throw new UnsupportedConfigException("Unknown contents of " + commonDirFile);
+            }
+            return resolve(gitDir, commonDir.trim());
+        }
+        return gitDir;
+    }
+
+    private File[] getGlobalFiles() {
+        String globalConfig = environment.get("GIT_CONFIG_GLOBAL");
+        if (!Strings.isNullOrEmpty(globalConfig)) {
+            return new File[]{new File(globalConfig)};
+        }
+
+        String configHome = environment.get("XDG_CONFIG_HOME");
+        File xdgConfig;
+        if (!Strings.isNullOrEmpty(configHome)) {
+            xdgConfig = new File(new File(configHome, "git"), "config");
+        } else {
+            xdgConfig = new File(new File(new File(homeDirectory, ".config"), "git"), "config");
+        }
+        return new File[]{xdgConfig, new File(homeDirectory, ".gitconfig")};
+    }
+
+    private void readFile(File file, boolean isGlobal, int depth) throws UnsupportedConfigException {
+        if (depth > MAX_INCLUDE_DEPTH) {
+            throw new UnsupportedConfigException("Too deeply nested includes in " + file);
+        }
+
+        addSource(file);
+        if (!file.isFile()) {
+            return;
+        }
+
+        String contents;
+        try {
+            contents = Files.asCharSource(file, Charsets.UTF_8).read();
+        } catch (IOException e) {
+            throw new UnsupportedConfigException("Unable to read " + file, e);
+        }
+        logger.debug("Reading git configuration {}", file);
+        new FileParser(file, contents, isGlobal, depth).parse();
+    }
+
+    private void addValue(File file, String section, String subsection, String name, String value,
+                          boolean isGlobal, int depth) throws UnsupportedConfigException {
+        if ("include".equals(section) && subsection == null && "path".equals(name)) {
+            include(file, value, isGlobal, depth);
+
+        } else if ("includeif".equals(section) && subsection != null && "path".equals(name)) {
+            if (isConditionMet(file, subsection)) {
+                include(file, value, isGlobal, depth);
+            }
+
+        } else if ("extensions".equals(section) && subsection == null && "worktreeconfig".equals(name)) {
+            worktreeConfig = isTrue(value);
+
+        } else if (HOOK_SECTION.equals(section)) {
+            String key = subsection == null ? section + "." + name : section + "." + subsection + "." + name;
+            values.put(key, value);
+            if (isGlobal) {
+                globalValues.put(key, value);
+            }
+        }
+    }
+
+    private void include(File file, String path, boolean isGlobal, int depth) throws UnsupportedConfigException {
+        if (Strings.isNullOrEmpty(path)) {
+            throw new UnsupportedConfigException("Empty include path in " + file);
+        }
+        readFile(resolve(file.getAbsoluteFile().getParentFile(), expandHome(path)), isGlobal, depth + 1);
+    }
+
+    private boolean isConditionMet(File file, String condition) throws UnsupportedConfigException {
+        if (condition.startsWith("gitdir:") || condition.startsWith("gitdir/i:")) {
+            boolean caseInsensitive = condition.startsWith("gitdir/i:");
+            String pattern = condition.substring(condition.indexOf(':') + 1);
+
+            if (gitDirectory == null) {
+                return false;
+            }
+
+            if (pattern.startsWith("./")) {
+                pattern = file.getAbsoluteFile().getParent() + pattern.substring(1);
+            } else {
+                pattern = expandHome(pattern);
+            }
+
+            if (!pattern.startsWith("/")) {
+                pattern = "**/" + pattern;
+            }
+
+            if (pattern.endsWith("/")) {
+                pattern += "**";
+            }
+
+            String gitDir = gitDirectory.getAbsolutePath() + "/";
+            String canonicalGitDir;
+            try {
+                canonicalGitDir = gitDirectory.getCanonicalPath() + "/";
+            } catch (IOException e) {
+                canonicalGitDir = gitDir;
+            }
+            Pattern regex = toRegex(pattern, caseInsensitive);
+            return regex.matcher(gitDir).matches() || regex.matcher(canonicalGitDir).matches();
+        }
+
+        if (condition.startsWith("onbranch:")) {
+            String pattern = condition.substring("onbranch:".length());
+            String branch = getCurrentBranch();
+
+            if (branch == null) {
+                return false;
+            }
+
+            if (pattern.endsWith("/")) {
+                pattern += "**";
+            }
+            return toRegex(pattern, false).matcher(branch).matches();
+        }
+
+        throw new UnsupportedConfigException("Unknown includeIf condition " + condition);
+    }
+
+    private String getCurrentBranch() throws UnsupportedConfigException {
+        File headFile = new File(gitDirectory, "HEAD");
+        addSource(headFile);
+        String head = readFirstLine(headFile);
+        String prefix = "ref: refs/heads/";
+
+        if (head != null && head.startsWith(prefix)) {
+            return head.substring(prefix.length()).trim();
+        }
+        return null;
+    }
+
+    private void addSource(File file) {
+        if (sources != null) {
+            sources.add(file.getAbsoluteFile());
+        }
+    }
+
+    private String expandHome(String path) {
+        if (path.startsWith("~/")) {
+            return homeDirectory.getAbsolutePath() + path.substring(1);
+        }
+        return path;
+    }
+
+    /**
+     * Converts a wildmatch pattern as used by includeIf into a regular expression.
+     * @param pattern the pattern
+     * @param caseInsensitive true if the pattern is case insensitive
+     * @return the regular expression
+     */
+    static Pattern toRegex(String pattern, boolean caseInsensitive) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+
+            if (c == '*') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                    if (i + 2 < pattern.length() && pattern.charAt(i + 2) == '/') {
+                        // **/ matches zero or more directories
+                        regex.append("(?:.*/)?");
+                        i += 3;
+                    } else {
+                        regex.append(".*");
+                        i += 2;
+                    }
+                    continue;
+                }
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[') {
+                int end = pattern.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                } else {
+                    String characterClass = pattern.substring(i + 1, end);
+                    if (characterClass.startsWith("!")) {
+                        characterClass = "^" + characterClass.substring(1);
+                    }
+                    regex.append('[').append(characterClass.replace("\\", "\\\\")).append(']');
+                    i = end;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+
+        return caseInsensitive ? Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE)
+                : Pattern.compile(regex.toString());
+    }
+
+    private static boolean isTrue(String value) {
+        return value == null || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")
+                || value.equalsIgnoreCase("on") || value.equals("1");
+    }
+
+    private static File resolve(File directory, String path) {
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return file;
+        }
+        return new File(directory, path);
+    }
+
+    private static String readFirstLine(File file) throws UnsupportedConfigException {
+        try {
+            return Files.asCharSource(file, Charsets.UTF_8).readFirstLine();
+        } catch (IOException e) {
+            throw new UnsupportedConfigException("Unable to read " + file, e);
+        }
+    }
+
+    /**
+     * Parser of a single configuration file.
+     */
+    private class FileParser {
+        private final File file;
+        private final String contents;
+        private final boolean isGlobal;
+        private final int depth;
+        private int position;
+        private String section;
+        private String subsection;
+
+        FileParser(File file, String contents, boolean isGlobal, int depth) {
+            this.file = file;
+            this.contents = contents;
+            this.isGlobal = isGlobal;
+            this.depth = depth;
+        }
+
+        void parse() throws UnsupportedConfigException {
+            // Skip any byte order mark
+            if (contents.startsWith("\uFEFF")) {
+                position++;
+            }
+
+            while (position < contents.length()) {
+                char c = contents.charAt(position);
+
+                if (Character.isWhitespace(c)) {
+                    position++;
+                } else if (c == '#' || c == ';') {
+                    skipLine();
+                } else if (c == '[') {
+                    parseSectionHeader();
+                } else if (Character.isLetter(c)) {
+                    parseVariable();
+                } else {
+                    throw unsupported("Unexpected character '" + c + "'");
+                }
+            }
+        }
+
+        private void parseSectionHeader() throws UnsupportedConfigException {
+            position++;
+            StringBuilder name = new StringBuilder();
+
+            while (position < contents.length()) {
+                char c = contents.charAt(position);
+                if (Character.isLetterOrDigit(c) || c == '-' || c == '.') {
+                    name.append(c);
+                    position++;
+                } else {
+                    break;
+                }
+            }
+
+            subsection = null;
+            skipBlanks();
+
+            if (position < contents.length() && contents.charAt(position) == '"') {
+                position++;
+                subsection = parseSubsection();
+                skipBlanks();
+            } else if (name.indexOf(".") > 0) {
+                // Deprecated [section.subsection] syntax
+                int dot = name.indexOf(".");
+                subsection = name.substring(dot + 1).toLowerCase();
+                name.setLength(dot);
+            }
+
+            if (position >= contents.length() || contents.charAt(position) != ']' || name.length() == 0) {
+                throw unsupported("Malformed section header");
+            }
+            position++;
+            section = name.toString().toLowerCase();
+        }
+
+        private String parseSubsection() throws UnsupportedConfigException {
+            StringBuilder value = new StringBuilder();
+
+            while (position < contents.length()) {
+                char c = contents.charAt(position++);
+
+                if (c == '"') {
+                    return value.toString();
+                } else if (c == '\\' && position < contents.length()) {
+                    value.append(contents.charAt(position++));
+                } else if (c == '\n') {
+                    break;
+                } else {
+                    value.append(c);
+                }
+            }
+            throw unsupported("Unterminated subsection");
+        }
+
+        private void parseVariable() throws UnsupportedConfigException {
+            if (section == null) {
+                throw unsupported("Variable outside of section");
+            }
+
+            int start = position;
+            while (position < contents.length()) {
+                char c = contents.charAt(position);
+                if (Character.isLetterOrDigit(c) || c == '-') {
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            String name = contents.substring(start, position).toLowerCase();
+            skipBlanks();
+
+            String value = null;
+            if (position < contents.length()) {
+                char c = contents.charAt(position);
+
+                if (c == '=') {
+                    position++;
+                    value = parseValue();
+                } else if (c == '#' || c == ';') {
+                    skipLine();
+                } else if (c == '\n' || c == '\r') {
+                    position++;
+                } else {
+                    throw unsupported("Malformed variable " + name);
+                }
+            }
+
+            // A variable without a value is a boolean true
+            addValue(file, section, subsection, name, value == null ? "true" : value, isGlobal, depth);
+        }
+
+        private String parseValue() throws UnsupportedConfigException {
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            // Length of the value excluding any trailing whitespace outside of quotes
+            int trimmedLength = 0;
+            skipBlanks();
+
+            while (position < contents.length()) {
+                char c = contents.charAt(position++);
+
+                if (c == '\n') {
+                    break;
+                }
+
+                if (c == '\r' && position < contents.length() && contents.charAt(position) == '\n') {
+                    continue;
+                }
+
+                if (!quoted && (c == '#' || c == ';')) {
+                    skipLine();
+                    break;
+                }
+
+                if (c == '"') {
+                    quoted = !quoted;
+                    trimmedLength = value.length();
+                    continue;
+                }
+
+                if (c == '\\') {
+                    if (position >= contents.length()) {
+                        throw unsupported("Unterminated escape sequence");
+                    }
+                    char escaped = contents.charAt(position++);
+                    switch (escaped) {
+                        case '\n':
+                            // Line continuation
+                            break;
+                        case '\r':
+                            if (position < contents.length() && contents.charAt(position) == '\n') {
+                                position++;
+                            }
+                            break;
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'b':
+                            if (value.length() > 0) {
+                                value.setLength(value.length() - 1);
+                            }
+                            break;
+                        case '\\':
+                        case '"':
+                            value.append(escaped);
+                            break;
+                        default:
+                            throw unsupported("Unknown escape sequence \\" + escaped);
+                    }
+                    trimmedLength = value.length();
+                    continue;
+                }
+
+                value.append(c);
+                if (quoted || !Character.isWhitespace(c)) {
+                    trimmedLength = value.length();
+                }
+            }
+
+            if (quoted) {
+                throw unsupported("Unterminated quote");
+            }
+            value.setLength(trimmedLength);
+            return value.toString();
+        }
+
+        private void skipBlanks() {
+            while (position < contents.length()
+                    && (contents.charAt(position) == ' ' || contents.charAt(position) == '\t')) {
+                position++;
+            }
+        }
+
+        private void skipLine() {
+            while (position < contents.length() && contents.charAt(position) != '\n') {
+                position++;
+            }
+        }
+
+        private UnsupportedConfigException unsupported(String reason) {
+            return new UnsupportedConfigException(reason + " in " + file);
+        }
+    }
+
+    /**
+     * Thrown when the git configuration contains constructs which aren't understood by the parser.
+     */
+    static class UnsupportedConfigException extends Exception {
+        UnsupportedConfigException(String message) {
+            super(message);
+        }
+
+        UnsupportedConfigException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
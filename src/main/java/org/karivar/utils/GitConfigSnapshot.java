@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of all githook.* keys found in the git configuration. Values from the global
+ * configuration are also kept separately, since some keys are only read from the global configuration.
+ * The snapshot knows which files it was derived from, which makes it possible to tell when it's outdated.
+ */
+class GitConfigSnapshot {
+    private static final String GLOBAL_PREFIX = "global:";
+    private static final String ALL_PREFIX = "all:";
+    private static final String SOURCE_KEY = "source";
+
+    private final ImmutableListMultimap<String, String> globalValues;
+    private final ImmutableListMultimap<String, String> values;
+    private final ImmutableList<File> sources;
+
+    GitConfigSnapshot(ListMultimap<String, String> globalValues, ListMultimap<String, String> values,
+                      Collection<File> sources) {
+        this.globalValues = ImmutableListMultimap.copyOf(globalValues);
+        this.values = ImmutableListMultimap.copyOf(values);
+        this.sources = ImmutableList.copyOf(sources);
+    }
+
+    /**
+     * Gets a value in the same way as git config [--global] [--get-all] &lt;key&gt;
+     * @param key the key, e.g githook.jira.projectkey
+     * @param isGlobalElement true if only the global configuration is used
+     * @param multipleFetches true if all values are returned separated by a space. Otherwise the last value
+     *                        is returned.
+     * @return the value or null if the key isn't found
+     */
+    String getValue(String key, boolean isGlobalElement, boolean multipleFetches) {
+        List<String> found = getValues(key, isGlobalElement);
+
+        if (found.isEmpty()) {
+            return null;
+        }
+
+        if (multipleFetches) {
+            return Joiner.on(" ").join(found);
+        }
+        return found.get(found.size() - 1);
+    }
+
+    /**
+     * Gets all values of the given key, in the order they are found in the git configuration.
+     * @param key the key, e.g githook.jira.projectkey
+     * @param isGlobalElement true if only the global configuration is used
+     * @return the values
+     */
+    ImmutableList<String> getValues(String key, boolean isGlobalElement) {
+        String normalizedKey = normalizeKey(key);
+        if (isGlobalElement) {
+            return globalValues.get(normalizedKey);
+        }
+        return values.get(normalizedKey);
+    }
+
+    ImmutableListMultimap<String, String> getGlobalValues() {
+        return globalValues;
+    }
+
+    ImmutableListMultimap<String, String> getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the files the snapshot is derived from, including those which didn't exist.
+     * @return the source files
+     */
+    ImmutableList<File> getSources() {
+        return sources;
+    }
+
+    /**
+     * Converts the snapshot into entries which can be stored by {@link SnapshotCache}.
+     * @return the entries
+     */
+    ListMultimap<String, String> toEntries() {
+        ListMultimap<String, String> entries = SnapshotCache.newEntries();
+
+        for (Map.Entry<String, String> entry : globalValues.entries()) {
+            entries.put(GLOBAL_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, String> entry : values.entries()) {
+            entries.put(ALL_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        for (File source : sources) {
+            entries.put(SOURCE_KEY, source.getPath());
+        }
+        return entries;
+    }
+
+    /**
+     * Creates a snapshot from entries created by {@link #toEntries()}.
+     * @param entries the entries
+     * @return the snapshot
+     */
+    static GitConfigSnapshot fromEntries(ListMultimap<String, String> entries) {
+        ListMultimap<String, String> globalValues = SnapshotCache.newEntries();
+        ListMultimap<String, String> values = SnapshotCache.newEntries();
+        List<File> sources = Lists.newArrayList();
+
+        for (Map.Entry<String, String> entry : entries.entries()) {
+            String key = entry.getKey();
+
+            if (key.startsWith(GLOBAL_PREFIX)) {
+                globalValues.put(key.substring(GLOBAL_PREFIX.length()), entry.getValue());
+            } else if (key.startsWith(ALL_PREFIX)) {
+                values.put(key.substring(ALL_PREFIX.length()), entry.getValue());
+            } else if (SOURCE_KEY.equals(key)) {
+                sources.add(new File(entry.getValue()));
+            }
+        }
+        return new GitConfigSnapshot(globalValues, values, sources);
+    }
+
+    /**
+     * Normalizes a key the same way as git. The section and the variable name are case insensitive, while
+     * the subsection is case sensitive.
+     * @param key the key
+     * @return the normalized key
+     */
+    static String normalizeKey(String key) {
+        int firstDot = key.indexOf('.');
+        int lastDot = key.lastIndexOf('.');
+
+        if (firstDot < 0) {
+            return key.toLowerCase();
+        }
+        return key.substring(0, firstDot).toLowerCase() + key.substring(firstDot, lastDot)
+                + key.substring(lastDot).toLowerCase();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Global values", globalValues.keySet()).
+                add("Values", values.keySet()).
+                toString();
+    }
+}
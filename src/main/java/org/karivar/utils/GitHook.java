@@ -7,83 +7,616 @@
  */
 package org.karivar.utils;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.karivar.utils.domain.IssueKeyNotFoundException;
 import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.JiraTimeoutException;
+import org.karivar.utils.domain.JiraUnavailableException;
+import org.karivar.utils.other.CacheDirectory;
 import org.karivar.utils.other.UTF8Control;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 class GitHook {
-    private static final String HOOK_VERSION = "0.9.5";
+    static final String HOOK_VERSION = "0.9.5";
+    static final String PREPARE_OPTION = "--prepare-commit-msg";
+    static final String POST_CHECKOUT_OPTION = "--post-checkout";
+    private static final long DEADLINE_GRACE_MILLIS = 500;
+    private static final long TRAILER_FRESHNESS_SECONDS = 3600;
+    // A checkout warms the issue cache with a few issues at most, and not more often than this
+    private static final int MAX_WARMED_ISSUES = 5;
+    private static final long WARMING_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final String WARMING_DIRECTORY = "warming";
+    private static final String GIT_DIRECTORY_PREFIX = "gitdir:";
     private final Logger logger = LoggerFactory.getLogger(GitHook.class);
     private ResourceBundle messages;
-    private static CommitMessageManipulator manipulator;
+    private CommitMessageManipulator manipulator;
     private boolean jiraCommunicationOverridden = false;
+    private final ConcurrentMap<String, IssueFetcher> jiraConnectors;
+    private final File workingDirectory;
+    // The time spent in the background, and the time spent waiting for it
+    private final AtomicLong backgroundNanos = new AtomicLong();
+    private long waitingNanos;
+
+    /**
+     * Creates a git hook.
+     * @param connectors the JIRA connectors which may be reused by this hook. The map is updated with
+     *                   any connector created by the hook, possibly from several threads.
+     */
+    GitHook(ConcurrentMap<String, IssueFetcher> connectors) {
+        this(connectors, null);
+    }
+
+    /**
+     * Creates a git hook for the repository in the given directory.
+     * @param connectors the JIRA connectors which may be reused by this hook. The map is updated with
+     *                   any connector created by the hook, possibly from several threads.
+     * @param directory the root directory of the repository, or null for the current directory. The git
+     *                  configuration of this directory is used by the hook and by every task it starts.
+     */
+    GitHook(ConcurrentMap<String, IssueFetcher> connectors, File directory) {
+        jiraConnectors = connectors;
+        workingDirectory = directory;
+    }
 
     public static void main(String[] args) {
-        GitHook githook = new GitHook();
-        githook.init(args);
+        if (args != null && args.length > 0 && HookDaemon.DAEMON_OPTION.equals(args[0])) {
+            // The console must be redirected before any logger is created
+            HookDaemon.redirectConsole();
+            new HookDaemon().serve();
+            return;
+        }
+
+        GitHook githook = new GitHook(new ConcurrentHashMap<>());
+        int exitCode;
+
+        if (args != null && args.length > 0 && StartupTrainer.TRAINING_OPTION.equals(args[0])) {
+            exitCode = githook.train();
+        } else if (args != null && args.length > 0 && PREPARE_OPTION.equals(args[0])) {
+            exitCode = githook.prepare(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args != null && args.length > 0 && POST_CHECKOUT_OPTION.equals(args[0])) {
+            exitCode = githook.warm(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            exitCode = githook.init(args);
+        }
+
+        // A JIRA client which isn't closed in time may still have threads keeping the JVM alive
+        boolean closed = githook.closeJiraConnectors();
+        if (exitCode != 0 || !closed) {
+            System.exit(exitCode);
+        }
     }
 
-    private void init(String[] args) {
+    /**
+     * Runs the hook for the given arguments. The JIRA issues are fetched in the background as soon as the issue
+     * keys are read from the commit message file, while the messages, the commit message and the rules are loaded.
+     * The two only meet when the state of the issues is checked. Commits which don't communicate with JIRA
+     * (NONE or -O) take a short path where nothing is started in the background and no class which talks to
+     * JIRA is loaded. The hook doesn't return before every task it started has finished.
+     * @param args the arguments given to the hook. The first argument is the commit message file.
+     * @return the exit code of the hook. 0 if the commit is accepted.
+     */
+    int init(String[] args) {
+        return GitConfig.withWorkingDirectory(workingDirectory, () -> {
+            if (args != null && args.length > 0) {
+                CommitHeader header = readCommitHeader(args[0]);
+                if (header.isCommitOverridden() || header.isCommunicationOverridden()) {
+                    return bypassJira(args[0]);
+                }
+            }
 
-        loadI18nMessages(GitConfig.getLanguageSettings());
+            // The deadline covers all communication with JIRA for this commit
+            Deadline deadline = Deadline.after(GitConfig.getJiraTimeout());
+            ExecutorService executor = Executors.newCachedThreadPool(
+                    new ThreadFactoryBuilder().setNameFormat("githook-startup-%d").setDaemon(true).build());
+            try {
+                return init(args, deadline, executor);
+            } finally {
+                shutDown(executor, deadline);
+            }
+        });
+    }
+
+    /**
+     * Stops the tasks of the hook, and waits for those which are still running. Requests to JIRA can't be
+     * interrupted, but they time out by themselves at the deadline.
+     */
+    private void shutDown(ExecutorService executor, Deadline deadline) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(deadline.getRemainingMillis() + DEADLINE_GRACE_MILLIS,
+                    TimeUnit.MILLISECONDS)) {
+                logger.debug("Some of the tasks of the hook are still running");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int init(String[] args, Deadline deadline, ExecutorService executor) {
+        String commitMessageFile = args != null && args.length > 0 ? args[0] : null;
+        // Issues already in the commit message (e.g of an amended commit) are used if they're fresh enough
+        Instant now = Instant.now();
+        long trailerFreshness = TimeUnit.SECONDS.toMillis(
+                GitConfig.getCacheTimeToLive("trailer", TRAILER_FRESHNESS_SECONDS));
+
+        CompletableFuture<ResourceBundle> messagesLoading = CompletableFuture.supplyAsync(
+                timed(() -> loadI18nMessages(GitConfig.getLanguageSettings())), executor);
+        CompletableFuture<String> projectsReading = CompletableFuture.supplyAsync(
+                timed(GitConfig::getJiraProjects), executor);
+        CompletableFuture<List<JiraIssue>> jiraIssuesFetching = commitMessageFile != null
+                ? fetchJiraIssues(commitMessageFile, messagesLoading, projectsReading, deadline, now,
+                        trailerFreshness, executor)
+                : CompletableFuture.completedFuture(Collections.emptyList());
+
+        messages = await(messagesLoading);
         manipulator = new CommitMessageManipulator(messages);
         printInitalText();
 
-        if (args != null && args.length > 0) {
-            manipulator.loadCommitMessage(args[0]);
-            JiraIssue populatedIssue = null;
+        if (commitMessageFile != null) {
+            manipulator.loadCommitMessage(commitMessageFile);
+            jiraCommunicationOverridden = manipulator.isCommunicationOverridden();
+
+            List<String> issueKeys = Collections.emptyList();
+            if (!jiraCommunicationOverridden && !manipulator.isCommitOverridden()) {
+                // Marks the issue keys as found in the commit message, and reports missing project keys
+                issueKeys = manipulator.getJiraIssueKeysFromCommitMessage(await(projectsReading));
+                if (manipulator.isExistingTrailerReusable(issueKeys, HOOK_VERSION, now, trailerFreshness)) {
+                    logger.debug("The JIRA issues are already in the commit message. Skipping JIRA");
+                    manipulator.reuseExistingTrailer(null);
+                    return 0;
+                }
+                // Loads the rules while the issues are fetched
+                new PropertyReader(messages).getIssueTypesAndStatuses();
+            } else {
+                logger.debug("Communication with JIRA is overridden or commit is overridden");
+            }
+
+            List<JiraIssue> populatedIssues;
+            long fetchingStarted = System.nanoTime();
             try {
-                populatedIssue = getPopulatedJiraIssue();
+                populatedIssues = awaitJiraIssues(jiraIssuesFetching, deadline);
+            } catch (JiraUnavailableException e) {
+                if (!GitConfig.isJiraFailOpen()) {
+                    logger.error(e.getLocalizedMessage());
+                    return 1;
+                }
+                logger.warn(messages.getString("jira.timeout.failopen"));
+                manipulator.markJiraUnavailable();
+                populatedIssues = Collections.emptyList();
             } catch (IssueKeyNotFoundException e) {
                 logger.error(e.getLocalizedMessage());
-                System.exit(1);
+                return 1;
+            }
+            logger.debug("Hid {} ms of the {} ms spent in the background behind other work",
+                    TimeUnit.NANOSECONDS.toMillis(Math.max(0, backgroundNanos.get() - waitingNanos)),
+                    TimeUnit.NANOSECONDS.toMillis(backgroundNanos.get()));
+            if (!issueKeys.isEmpty()) {
+                reportPrefetch(commitMessageFile, issueKeys, System.nanoTime() - fetchingStarted);
             }
 
-            if (!manipulator.checkStateAndManipulateCommitMessage(populatedIssue,
+            if (!manipulator.checkStateAndManipulateCommitMessage(populatedIssues,
                     jiraCommunicationOverridden, null, HOOK_VERSION)) {
-                System.exit(1);
+                return 1;
             }
 
         } else {
             logger.error(messages.getString("error.githook.nocommitfile"));
         }
+        return 0;
     }
 
-    private JiraIssue getPopulatedJiraIssue() throws IssueKeyNotFoundException {
-        // Get options for
-        //   1: override communication with JIRA altogether
-        //   2: override (e.g force) commits
+    private int bypassJira(String commitMessageFile) {
+        messages = loadI18nMessages(GitConfig.getLanguageSettings());
+        manipulator = new CommitMessageManipulator(messages);
+        printInitalText();
+
+        manipulator.loadCommitMessage(commitMessageFile);
         jiraCommunicationOverridden = manipulator.isCommunicationOverridden();
-        boolean commitOverridden = manipulator.isCommitOverridden();
+        logger.debug("Communication with JIRA is overridden or commit is overridden");
+
+        return manipulator.checkStateAndManipulateCommitMessage(Collections.emptyList(),
+                jiraCommunicationOverridden, null, HOOK_VERSION) ? 0 : 1;
+    }
+
+    /**
+     * Prefetches the JIRA issues the commit is likely to mention while the commit message is written, so the
+     * commit-msg hook finds them in the issue cache. The issue keys are guessed from the prepared commit message,
+     * the branch name or the previous commit. The prepare-commit-msg hook runs this in the background, and it
+     * never stops the commit.
+     * @param args the arguments given to prepare-commit-msg. The first argument is the commit message file.
+     * @return the exit code of the prefetch, always 0
+     */
+    int prepare(String[] args) {
+        if (args.length == 0) {
+            return 0;
+        }
+
+        File commitMessageFile = new File(args[0]).getAbsoluteFile();
+        CommitHeader header = readCommitHeader(commitMessageFile.getPath());
+        String projects = GitConfig.getJiraProjects();
+        // Sessions prefetch the issues of all their commits by themselves
+        if (header.isCommitOverridden() || header.isCommunicationOverridden() || Strings.isNullOrEmpty(projects)
+                || HookSession.detect(commitMessageFile.getParentFile(), System.getenv()).isPresent()) {
+            return 0;
+        }
+
+        Set<String> issueKeys = new IssueKeyGuesser(IssueKeyMatcher.forProjectKeys(projects))
+                .guess(commitMessageFile);
+        if (issueKeys.isEmpty()) {
+            logger.debug("No issue keys to prefetch");
+            return 0;
+        }
+
+        messages = loadI18nMessages(GitConfig.getLanguageSettings());
+        List<String> issueLinks = new PropertyReader(messages).getIssueLinks();
+        IssueFetcher jiraConnector = getJiraConnector(messages);
+        // The assignee may be overridden when the commit message is written, but not before
+        FetchPlan fetchPlan = CommitMessageManipulator.getFetchPlan(false, issueLinks);
+        Deadline deadline = Deadline.after(GitConfig.getJiraTimeout());
+
+        Set<String> prefetchedIssueKeys = Sets.newLinkedHashSet();
+        for (String issueKey : issueKeys) {
+            try {
+                // Fetched one at a time, so a commit waits for the prefetch of its issue instead of fetching it too.
+                // The commit waits for half of its time left at most, and then fetches the issue by itself
+                if (!jiraConnector.getJiraPopulatedIssues(Collections.singletonList(issueKey), issueLinks,
+                        fetchPlan, 1, Optional.empty(), deadline).isEmpty()) {
+                    prefetchedIssueKeys.add(issueKey);
+                }
+            } catch (IssueKeyNotFoundException e) {
+                logger.debug("Unable to prefetch {}: {}", issueKey, e.getLocalizedMessage());
+            }
+        }
+
+        PrefetchRecord.forGitDirectory(commitMessageFile.getParentFile()).write(prefetchedIssueKeys);
+        logger.debug("Prefetched {} of the issues {}", prefetchedIssueKeys.size(), issueKeys);
+        return 0;
+    }
+
+    /**
+     * Warms the issue cache with the JIRA issues named by the branch which was checked out (e.g
+     * feature/EXAMPLE-431-login-timeout), so the first commit on the branch doesn't wait for JIRA. The issues are
+     * fetched with the parent issue and the related issues of the commit message. The post-checkout hook runs
+     * this in the background with low priority. Checkouts following each other closely only warm the cache once.
+     * @param args the arguments given to post-checkout: the previous HEAD, the new HEAD and whether a branch was
+     *             checked out (1) or only files (0)
+     * @return the exit code of the warming, always 0
+     */
+    int warm(String[] args) {
+        if (args.length < 3 || !"1".equals(args[2])) {
+            return 0;
+        }
+        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
+        String projects = GitConfig.getJiraProjects();
+        File gitDirectory = findGitDirectory();
+        Optional<String> branchName = IssueKeyGuesser.readBranchName(gitDirectory);
+        if (Strings.isNullOrEmpty(projects) || !branchName.isPresent()) {
+            return 0;
+        }
 
-        if (!jiraCommunicationOverridden && !commitOverridden) {
-            // Contact JIRA, fetch JIRA issue and check state and return populated issue
-            logger.debug("Preparing to communicate with JIRA");
+        List<String> issueKeys = Lists.newArrayList(new IssueKeyGuesser(IssueKeyMatcher.forProjectKeys(projects))
+                .findIssueKeys(branchName.get()));
+        if (issueKeys.isEmpty() || !claimWarming(gitDirectory)) {
+            return 0;
+        }
+        issueKeys = issueKeys.subList(0, Math.min(issueKeys.size(), MAX_WARMED_ISSUES));
+
+        messages = loadI18nMessages(GitConfig.getLanguageSettings());
+        List<String> issueLinks = new PropertyReader(messages).getIssueLinks();
+        try {
+            int warmed = getJiraConnector(messages).prefetchJiraIssues(issueKeys, issueLinks,
+                    CommitMessageManipulator.getFetchPlan(false, issueLinks), Optional.empty(),
+                    Deadline.after(GitConfig.getJiraTimeout()));
+            logger.debug("Warmed the issue cache with {} of the issues {} of {}", warmed, issueKeys,
+                    branchName.get());
+        } catch (IssueKeyNotFoundException e) {
+            logger.debug("Unable to warm the issue cache for {}: {}", branchName.get(), e.getLocalizedMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Claims the warming of the issue cache for the repository, unless it was warmed a moment ago.
+     * @param gitDirectory the git directory of the repository
+     * @return true if the issue cache should be warmed
+     */
+    private boolean claimWarming(File gitDirectory) {
+        File claim = new File(new File(CacheDirectory.get(), WARMING_DIRECTORY), Hashing.sha256().hashString(
+                gitDirectory.getAbsolutePath(), Charsets.UTF_8).toString().substring(0, 16));
+        long now = System.currentTimeMillis();
+
+        if (claim.isFile() && now - claim.lastModified() < WARMING_INTERVAL_MILLIS) {
+            logger.debug("The issue cache was warmed {} ms ago", now - claim.lastModified());
+            return false;
+        }
 
-            JiraConnector jiraConnector = new JiraConnector(messages);
-            jiraConnector.connectToJira(GitConfig.getJiraUsername(),
-                    GitConfig.getJiraEncodedPassword(), GitConfig.getJiraAddress());
+        try {
+            CacheDirectory.writePrivateFile(claim, new byte[0]);
+        } catch (IOException e) {
+            logger.debug("Unable to claim the warming of the issue cache");
+        }
+        return true;
+    }
+
+    /**
+     * Finds the git directory of the working directory. A worktree's .git is a file naming its git directory.
+     * @return the git directory
+     */
+    private File findGitDirectory() {
+        String gitDirectory = System.getenv("GIT_DIR");
+        if (!Strings.isNullOrEmpty(gitDirectory)) {
+            return new File(gitDirectory);
+        }
+
+        File dotGit = new File(".git");
+        if (dotGit.isFile()) {
+            try {
+                String reference = Files.asCharSource(dotGit, Charsets.UTF_8).readFirstLine();
+                if (reference != null && reference.startsWith(GIT_DIRECTORY_PREFIX)) {
+                    File worktreeGitDirectory = new File(reference.substring(GIT_DIRECTORY_PREFIX.length()).trim());
+                    return worktreeGitDirectory.isAbsolute() ? worktreeGitDirectory
+                            : new File(dotGit.getAbsoluteFile().getParentFile(), worktreeGitDirectory.getPath());
+                }
+            } catch (IOException e) {
+                logger.debug("Unable to read {}", dotGit);
+            }
+        }
+        return dotGit;
+    }
+
+    private void reportPrefetch(String commitMessageFile, List<String> issueKeys, long fetchingNanos) {
+        PrefetchRecord prefetchRecord = PrefetchRecord.forGitDirectory(
+                new File(commitMessageFile).getAbsoluteFile().getParentFile());
+        boolean paidOff = prefetchRecord.use(issueKeys, IssueCache.getVolatileTimeToLive());
+
+        logger.debug("Waited {} ms for the JIRA issues. Prefetched: {}. The prefetch paid off for {} of {} commits",
+                TimeUnit.NANOSECONDS.toMillis(fetchingNanos), paidOff, prefetchRecord.getPaidOffCount(),
+                prefetchRecord.getCommitCount());
+    }
+
+    /**
+     * Creates the class data sharing archive used to speed up the startup of the hook.
+     * @return the exit code of the training. 0 if the archive is created.
+     */
+    int train() {
+        messages = loadI18nMessages(GitConfig.getLanguageSettings());
+        return new StartupTrainer(messages).train();
+    }
+
+    /**
+     * Closes the JIRA connectors of this hook. The connectors share a single time limit, so the hook exits at
+     * most {@link IssueFetcher#CLOSE_TIMEOUT_MILLIS} after the commit message is written.
+     * @return true if every connector was closed within the time limit
+     */
+    boolean closeJiraConnectors() {
+        long start = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(IssueFetcher.CLOSE_TIMEOUT_MILLIS);
+        boolean closed = true;
+
+        for (IssueFetcher jiraConnector : jiraConnectors.values()) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos - (System.nanoTime() - start));
+            closed &= jiraConnector.close(remainingMillis);
+        }
+        jiraConnectors.clear();
+
+        logger.debug("Shut down the connections to JIRA in {} ms",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return closed;
+    }
+
+    private CompletableFuture<List<JiraIssue>> fetchJiraIssues(String commitMessageFile,
+                                                              CompletableFuture<ResourceBundle> messagesLoading,
+                                                              CompletableFuture<String> projectsReading,
+                                                              Deadline deadline, Instant now, long trailerFreshness,
+                                                              ExecutorService executor) {
+        // Only the first line is needed to find the issue keys and the options
+        CompletableFuture<CommitHeader> headerReading = CompletableFuture.supplyAsync(
+                timed(() -> readCommitHeader(commitMessageFile)), executor);
+        CompletableFuture<List<String>> issueLinksLoading = messagesLoading.thenApplyAsync(
+                timed(bundle -> new PropertyReader(bundle).getIssueLinks()), executor);
+
+        return headerReading.thenCombine(projectsReading, (header, projects) -> {
+            if (header.isCommunicationOverridden() || header.isCommitOverridden() || Strings.isNullOrEmpty(projects)) {
+                return CompletableFuture.completedFuture(Collections.<JiraIssue>emptyList());
+            }
+
+            List<String> issueKeys = Lists.newArrayList(Sets.newLinkedHashSet(Lists.transform(
+                    header.findIssueKeys(IssueKeyMatcher.forProjectKeys(projects)), IssueKeyMatcher.Match::getKey)));
+            if (issueKeys.isEmpty()) {
+                return CompletableFuture.completedFuture(Collections.<JiraIssue>emptyList());
+            }
+
+            CompletableFuture<Boolean> trailerChecking = messagesLoading.thenApplyAsync(
+                    timed(bundle -> isTrailerReusable(commitMessageFile, bundle, issueKeys,
+                            header.isAssigneeOverridden(), now, trailerFreshness)), executor);
+
+            return trailerChecking.thenCompose(trailerReusable -> {
+                if (trailerReusable) {
+                    return CompletableFuture.completedFuture(Collections.<JiraIssue>emptyList());
+                }
+
+                // Contact JIRA, fetch JIRA issues and return populated issues
+                logger.debug("Preparing to communicate with JIRA");
+                CompletableFuture<IssueFetcher> connecting = messagesLoading.thenApplyAsync(
+                        timed(this::getJiraConnector), executor);
+
+                return connecting.thenCombineAsync(issueLinksLoading, timed((jiraConnector, issueLinks) -> {
+                    try {
+                        // During a rebase, a cherry-pick or git am, the issues of later commits are fetched as well
+                        Optional<HookSession> session = HookSession.detect(
+                                new File(commitMessageFile).getAbsoluteFile().getParentFile(), System.getenv());
+                        if (session.isPresent()) {
+                            prefetchSession(jiraConnector, session.get(), issueKeys, projects, issueLinks, deadline);
+                        }
+
+                        return jiraConnector.getJiraPopulatedIssues(issueKeys, issueLinks,
+                                CommitMessageManipulator.getFetchPlan(header.isAssigneeOverridden(), issueLinks),
+                                GitConfig.getJiraParallelism(), session, deadline);
+                    } catch (IssueKeyNotFoundException e) {
+                        throw new CompletionException(e);
+                    }
+                }), executor);
+            });
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Fetches the issues of every commit of the session with a single search, if this is the first hook of the
+     * session. The rest of the session finds the issues in the issue cache.
+     */
+    private void prefetchSession(IssueFetcher jiraConnector, HookSession session, List<String> issueKeys,
+                                 String projects, List<String> issueLinks, Deadline deadline) {
+        if (!session.claimPrefetch()) {
+            logger.debug("Using the issues prefetched for {}", session);
+            return;
+        }
+
+        Set<String> sessionIssueKeys = Sets.newLinkedHashSet(issueKeys);
+        sessionIssueKeys.addAll(session.findIssueKeys(IssueKeyMatcher.forProjectKeys(projects)));
+        try {
+            // The assignee may be checked for the later commits, even if it's overridden for this one
+            int prefetched = jiraConnector.prefetchJiraIssues(sessionIssueKeys, issueLinks,
+                    CommitMessageManipulator.getFetchPlan(false, issueLinks), Optional.of(session), deadline);
+            logger.debug("Prefetched {} of the {} issues of {}", prefetched, sessionIssueKeys.size(), session);
+        } catch (IssueKeyNotFoundException e) {
+            // The issues of this commit are fetched by themselves
+            logger.debug("Unable to prefetch the issues of {}: {}", session, e.getLocalizedMessage());
+        }
+    }
+
+    private static boolean isTrailerReusable(String commitMessageFile, ResourceBundle bundle, List<String> issueKeys,
+                                             boolean assigneeOverridden, Instant now, long trailerFreshness) {
+        try {
+            Optional<HookTrailer> trailer = HookTrailer.find(CommitMessageFile.read(new File(commitMessageFile)),
+                    bundle);
+            return trailer.isPresent()
+                    && trailer.get().isReusable(issueKeys, assigneeOverridden, HOOK_VERSION, now, trailerFreshness);
+        } catch (IOException e) {
+            // Reported when the commit message is loaded
+            return false;
+        }
+    }
+
+    private static CommitHeader readCommitHeader(String commitMessageFile) {
+        try {
+            return CommitHeader.parse(CommitMessageFile.read(new File(commitMessageFile)).getHeader());
+        } catch (IOException e) {
+            // Reported when the commit message is loaded
+            return CommitHeader.parse(null);
+        }
+    }
+
+    private List<JiraIssue> awaitJiraIssues(CompletableFuture<List<JiraIssue>> jiraIssuesFetching,
+                                            Deadline deadline) throws IssueKeyNotFoundException {
+        long started = System.nanoTime();
+        try {
+            // The requests time out by themselves, this only guards against anything else which hangs
+            return jiraIssuesFetching.get(deadline.getRemainingMillis() + DEADLINE_GRACE_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            jiraIssuesFetching.cancel(true);
+            throw new JiraTimeoutException(messages.getString("error.jira.timeout") + deadline.getBudgetMillis()
+                    + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IssueKeyNotFoundException) {
+                throw (IssueKeyNotFoundException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IssueKeyNotFoundException(e.getLocalizedMessage());
+        } finally {
+            waitingNanos += System.nanoTime() - started;
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        long started = System.nanoTime();
+        try {
+            return future.join();
+        } finally {
+            waitingNanos += System.nanoTime() - started;
+        }
+    }
+
+    /**
+     * Wraps a task of the hook, so the time it takes is recorded and it reads the git configuration of the
+     * repository of this hook, whichever thread it runs on.
+     */
+    private <T> Supplier<T> timed(Supplier<T> task) {
+        return () -> {
+            long started = System.nanoTime();
+            try {
+                return GitConfig.withWorkingDirectory(workingDirectory, task);
+            } finally {
+                backgroundNanos.addAndGet(System.nanoTime() - started);
+            }
+        };
+    }
+
+    private <T, R> Function<T, R> timed(Function<T, R> task) {
+        return value -> timed(() -> task.apply(value)).get();
+    }
+
+    private <T, U, R> BiFunction<T, U, R> timed(BiFunction<T, U, R> task) {
+        return (first, second) -> timed(() -> task.apply(first, second)).get();
+    }
 
+    private IssueFetcher getJiraConnector(ResourceBundle bundle) {
+        String username = GitConfig.getJiraUsername();
+        String encodedPassword = GitConfig.getJiraEncodedPassword();
+        String address = GitConfig.getJiraAddress();
 
-            Optional<String> issueKey = manipulator.getJiraIssueKeyFromCommitMessage(
-                    manipulator.getJiraIssueKeyFromPattern(GitConfig.getJiraProjects()));
+        // A connector is only reused for identical credentials, address and language
+        String connectorKey = Joiner.on('|').useForNull("").join(username, encodedPassword, address,
+                bundle.getLocale());
+        IssueFetcher jiraConnector = jiraConnectors.get(connectorKey);
 
-            PropertyReader propertyReader = new PropertyReader(messages);
-            return jiraConnector.getJiraPopulatedIssue(issueKey,  propertyReader.getIssueLinks());
+        if (jiraConnector == null) {
+            // The tasks of a commit, and the commits served by the daemon, may ask for the connector at once
+            jiraConnector = jiraConnectors.computeIfAbsent(connectorKey, key -> {
+                JiraConnector connector = new JiraConnector(bundle);
+                connector.connectToJira(username, encodedPassword, address);
+                return connector;
+            });
         } else {
-            logger.debug("Communication with JIRA is overridden or commit is overridden");
+            logger.debug("Reusing the connection to JIRA");
         }
-        return null;
+        return jiraConnector;
     }
 
-    private void loadI18nMessages(String languageSettings) {
+    private static ResourceBundle loadI18nMessages(String languageSettings) {
         if (languageSettings != null) {
-            messages = ResourceBundle.getBundle("messages", Locale.forLanguageTag(languageSettings),
+            return ResourceBundle.getBundle("messages", Locale.forLanguageTag(languageSettings),
                     new UTF8Control());
-        } else messages = ResourceBundle.getBundle("messages");
+        } else return ResourceBundle.getBundle("messages");
     }
 
     private void printInitalText() {
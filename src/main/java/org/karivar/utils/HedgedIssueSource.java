@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for hedging the requests of another {@link IssueSource}. When a request takes longer
+ * than 95% of the latest requests, the same request is sent once more and the first response is used. This cuts
+ * the slow tail of the latencies (e.g a lost packet or a busy JIRA node) at the cost of a few extra requests.
+ * It's enabled with githook.jira.hedge.
+ */
+class HedgedIssueSource implements IssueSource {
+    private static final int HEDGE_PERCENTILE = 95;
+
+    private final Logger logger = LoggerFactory.getLogger(HedgedIssueSource.class);
+    private final IssueSource issueSource;
+    private final LatencyTracker latencyTracker;
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("jira-hedge-%d").setDaemon(true).build());
+
+    HedgedIssueSource(IssueSource issueSource, LatencyTracker latencyTracker) {
+        this.issueSource = issueSource;
+        this.latencyTracker = latencyTracker;
+    }
+
+    @Override
+    public Response get(String resource, Deadline deadline) throws IOException {
+        long hedgeDelay = latencyTracker.getPercentile(HEDGE_PERCENTILE);
+        if (hedgeDelay < 0 || hedgeDelay >= deadline.getRemainingMillis()) {
+            // Nothing to hedge against, or no time for a second request
+            return timedGet(resource, deadline);
+        }
+
+        CompletionService<Response> requests = new ExecutorCompletionService<>(executor);
+        List<Future<Response>> futures = Lists.newArrayListWithCapacity(2);
+        try {
+            futures.add(requests.submit(() -> timedGet(resource, deadline)));
+            Future<Response> completed = requests.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+
+            if (completed == null) {
+                logger.debug("No response within {} ms, hedging {}", hedgeDelay, resource);
+                futures.add(requests.submit(() -> timedGet(resource, deadline)));
+            }
+
+            IOException failure = null;
+            int pending = futures.size();
+            while (pending > 0) {
+                if (completed == null) {
+                    completed = requests.poll(deadline.getRemainingMillis(), TimeUnit.MILLISECONDS);
+                    if (completed == null) {
+                        break;
+                    }
+                }
+                pending--;
+
+                try {
+                    return completed.get();
+                } catch (ExecutionException e) {
+                    // The other request may still succeed
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                    completed = null;
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            throw new SocketTimeoutException("No response from JIRA within " + deadline.getBudgetMillis() + " ms");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } finally {
+            for (Future<Response> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Response timedGet(String resource, Deadline deadline) throws IOException {
+        long started = System.nanoTime();
+        Response response = issueSource.get(resource, deadline);
+        if (response.getStatusCode() / 100 == 2) {
+            // A fast error (e.g 404 of an unknown issue or 503 of a busy JIRA) says little about a successful request
+            latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+        return response;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        issueSource.close();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for running the git hook as a long-lived background process for the current user.
+ * The JVM, the JIRA connections, the configuration and the message bundles are kept warm between commits,
+ * and the commit-msg script only hands over the repository and the location of the commit message.<br>
+ *
+ * The daemon listens on the loopback interface. The port and a random access token is written to the file
+ * daemon in the cache directory (e.g ~/.cache/git-jira-hook/daemon) which is readable by the owner only.
+ * A request consists of three lines: the access token, the repository directory and the commit message file.
+ * The response is the output of the hook followed by a last line containing exit:&lt;exit code&gt;
+ */
+class HookDaemon {
+    static final String DAEMON_OPTION = "--daemon";
+    private static final String DAEMON_FILENAME = "daemon";
+    private static final String EXIT_PREFIX = "exit:";
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    // The commit-msg script sends the whole request at once
+    private static final int REQUEST_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(2);
+    private static final SwitchableOutputStream console = new SwitchableOutputStream();
+
+    private final Logger logger = LoggerFactory.getLogger(HookDaemon.class);
+    private final ConcurrentMap<String, IssueFetcher> jiraConnectors = Maps.newConcurrentMap();
+    private final ExecutorService workers = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("githook-daemon-%d").setDaemon(true).build());
+    private final File daemonFile = new File(CacheDirectory.get(), DAEMON_FILENAME);
+    private String token;
+
+    /**
+     * Replaces standard out and standard error with streams which can be captured per request. Must be called
+     * before the logging framework is initialised, since the console appender holds on to the original stream.
+     */
+    static void redirectConsole() {
+        console.setTarget(System.out);
+        try {
+            PrintStream redirected = new PrintStream(console, true, Charsets.UTF_8.name());
+            System.setOut(redirected);
+            System.setErr(redirected);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Starts serving requests. Returns when the daemon has been idle for too long, or if another daemon
+     * is already running.
+     */
+    void serve() {
+        if (isAlreadyRunning()) {
+            logger.info("The git hook daemon is already running");
+            return;
+        }
+
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            // The configuration is kept in memory until any of its files change
+            SnapshotWatcher snapshotWatcher = new SnapshotWatcher();
+            GitConfig.watchForChanges(snapshotWatcher);
+            PropertyReader.watchForChanges(snapshotWatcher);
+
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            serverSocket.setSoTimeout((int) IDLE_TIMEOUT);
+            token = createToken();
+            publish(serverSocket.getLocalPort());
+            logger.debug("The git hook daemon is listening on port {}", serverSocket.getLocalPort());
+
+            while (true) {
+                try {
+                    // A client which is slow to send its request must not hold up the clients after it
+                    Socket socket = serverSocket.accept();
+                    workers.execute(() -> handle(socket));
+                } catch (SocketTimeoutException e) {
+                    logger.debug("The git hook daemon has been idle for too long. Exiting");
+                    break;
+                } catch (IOException e) {
+                    logger.error("Unable to accept request", e);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to start the git hook daemon", e);
+        } finally {
+            unpublish();
+            shutDownWorkers();
+            new GitHook(jiraConnectors).closeJiraConnectors();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket closedSocket = socket) {
+            closedSocket.setSoTimeout(REQUEST_TIMEOUT);
+            handleRequest(closedSocket);
+        } catch (IOException e) {
+            logger.error("Unable to handle request", e);
+        }
+    }
+
+    private void handleRequest(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+        String requestToken = reader.readLine();
+        String workingDirectory = reader.readLine();
+        String commitMessageFile = reader.readLine();
+
+        if (requestToken == null || !MessageDigest.isEqual(requestToken.getBytes(Charsets.UTF_8),
+                token.getBytes(Charsets.UTF_8))) {
+            logger.debug("Rejected request with invalid access token");
+            return;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode;
+        // The console is shared by the whole process, so the hooks capturing it run one at a time
+        synchronized (console) {
+            OutputStream previousTarget = console.getTarget();
+            console.setTarget(output);
+            try {
+                exitCode = runHook(workingDirectory, commitMessageFile);
+            } finally {
+                console.setTarget(previousTarget);
+            }
+        }
+
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+        writer.write(new String(output.toByteArray(), Charsets.UTF_8));
+        writer.write(EXIT_PREFIX + exitCode + "\n");
+        writer.flush();
+    }
+
+    private int runHook(String workingDirectory, String commitMessageFile) {
+        if (Strings.isNullOrEmpty(workingDirectory)) {
+            return 1;
+        }
+
+        try {
+            // The hook and its tasks read the configuration of the repository, not of the daemon
+            return new GitHook(jiraConnectors, new File(workingDirectory)).init(new String[]{commitMessageFile});
+        } catch (RuntimeException e) {
+            logger.error("Got unhandled Exception\n\t", e);
+            return 1;
+        }
+    }
+
+    private boolean isAlreadyRunning() {
+        if (daemonFile.isFile()) {
+            try {
+                List<String> values = Splitter.on(' ').splitToList(Files.asCharSource(daemonFile, Charsets.UTF_8)
+                        .readFirstLine());
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(values.get(0)))) {
+                    return socket.isConnected();
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Found stale daemon file {}", daemonFile);
+            }
+        }
+        return false;
+    }
+
+    private void publish(int port) throws IOException {
+        // The access token must not be readable by other users
+        CacheDirectory.writePrivateFile(daemonFile, (port + " " + token + "\n").getBytes(Charsets.UTF_8));
+    }
+
+    private void shutDownWorkers() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                logger.debug("Gave up waiting for the requests being handled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void unpublish() {
+        try {
+            // Only remove the file if it hasn't been taken over by another daemon
+            if (token != null && daemonFile.isFile()
+                    && Files.asCharSource(daemonFile, Charsets.UTF_8).read().contains(token)) {
+                java.nio.file.Files.delete(daemonFile.toPath());
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to remove {}", daemonFile);
+        }
+    }
+
+    private static String createToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder tokenBuilder = new StringBuilder();
+
+        for (byte value : bytes) {
+            tokenBuilder.append(String.format("%02x", value));
+        }
+        return tokenBuilder.toString();
+    }
+
+    /**
+     * An output stream which forwards everything to a target which can be replaced at any time.
+     */
+    private static class SwitchableOutputStream extends OutputStream {
+        private volatile OutputStream target;
+
+        OutputStream getTarget() {
+            return target;
+        }
+
+        void setTarget(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+    }
+}
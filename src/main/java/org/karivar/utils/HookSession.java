@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for recognizing when the hook runs as one of many commits made in a row, i.e during a
+ * rebase, a cherry-pick of several commits, git am or a script which sets {@link #SESSION_VARIABLE}. The commits of
+ * a session share the fetched JIRA issues: the first hook of the session fetches the issues of every commit which
+ * is still to come (e.g from git-rebase-todo) with a single search, and the cached issues are used for the rest of
+ * the session instead of asking JIRA again.
+ */
+final class HookSession {
+    /**
+     * The environment variable which makes a script's commits a session. The value identifies the session.
+     */
+    static final String SESSION_VARIABLE = "GITHOOK_SESSION";
+    private static final long SESSION_TIME_TO_LIVE_SECONDS = 900;
+    private static final String SESSION_DIRECTORY = "sessions";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String SUBJECT_PREFIX = "Subject:";
+
+    private static final Logger logger = LoggerFactory.getLogger(HookSession.class);
+
+    /**
+     * The git commands which make a session.
+     */
+    enum Kind {
+        REBASE_MERGE,
+        REBASE_APPLY,
+        CHERRY_PICK,
+        SCRIPT
+    }
+
+    private final Kind kind;
+    private final String id;
+    private final File gitDirectory;
+    private Long cacheTimeToLive;
+
+    private HookSession(Kind kind, String id, File gitDirectory) {
+        this.kind = kind;
+        this.id = id;
+        this.gitDirectory = gitDirectory;
+    }
+
+    /**
+     * Detects whether the commit is part of a session.
+     * @param gitDirectory the git directory of the commit, i.e the directory of the commit message file
+     * @param environment the environment of the hook
+     * @return the session, or empty if the commit is made by itself
+     */
+    static Optional<HookSession> detect(File gitDirectory, Map<String, String> environment) {
+        File directory = gitDirectory.getAbsoluteFile();
+
+        if (new File(directory, "rebase-merge").isDirectory()) {
+            return Optional.of(create(Kind.REBASE_MERGE, directory, new File(directory, "rebase-merge/onto")));
+        }
+        if (new File(directory, "rebase-apply").isDirectory()) {
+            return Optional.of(create(Kind.REBASE_APPLY, directory, new File(directory, "rebase-apply/last")));
+        }
+        if (new File(directory, "CHERRY_PICK_HEAD").isFile()) {
+            // Several commits are picked by the sequencer, while a single commit is picked without it
+            File sequencerHead = new File(directory, "sequencer/head");
+            return Optional.of(create(Kind.CHERRY_PICK, directory,
+                    sequencerHead.isFile() ? sequencerHead : new File(directory, "CHERRY_PICK_HEAD")));
+        }
+
+        String scriptSession = environment.get(SESSION_VARIABLE);
+        if (!Strings.isNullOrEmpty(scriptSession)) {
+            return Optional.of(new HookSession(Kind.SCRIPT, hash(directory.getPath() + "|" + scriptSession),
+                    directory));
+        }
+        return Optional.empty();
+    }
+
+    private static HookSession create(Kind kind, File gitDirectory, File startFile) {
+        // The file is written when the session starts, so its contents and time tell sessions apart
+        String start = "";
+        try {
+            if (startFile.isFile()) {
+                start = Files.asCharSource(startFile, Charsets.UTF_8).read().trim() + "|" + startFile.lastModified();
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to read {}", startFile);
+        }
+        return new HookSession(kind, hash(gitDirectory.getPath() + "|" + kind + "|" + start), gitDirectory);
+    }
+
+    private static String hash(String value) {
+        return Hashing.sha256().hashString(value, Charsets.UTF_8).toString().substring(0, 16);
+    }
+
+    /**
+     * Finds the issue keys of the commits which are still to be made in the session.
+     * @param matcher the matcher of the configured JIRA projects
+     * @return the issue keys in the order of the commits, without duplicates
+     */
+    Set<String> findIssueKeys(IssueKeyMatcher matcher) {
+        Set<String> issueKeys = Sets.newLinkedHashSet();
+
+        for (String line : readPlannedCommits()) {
+            if (line.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            for (IssueKeyMatcher.Match match : matcher.findAll(line)) {
+                issueKeys.add(match.getKey());
+            }
+        }
+        return issueKeys;
+    }
+
+    private List<String> readPlannedCommits() {
+        try {
+            switch (kind) {
+                case REBASE_MERGE:
+                    return readLines(new File(gitDirectory, "rebase-merge/git-rebase-todo"));
+                case REBASE_APPLY:
+                    return readPatchSubjects(new File(gitDirectory, "rebase-apply"));
+                case CHERRY_PICK:
+                    return readLines(new File(gitDirectory, "sequencer/todo"));
+                default:
+                    // A script doesn't tell what comes next
+                    return Collections.emptyList();
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Unable to read the planned commits of {}", this);
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return file.isFile() ? Files.readLines(file, Charsets.UTF_8) : Collections.emptyList();
+    }
+
+    private static List<String> readPatchSubjects(File rebaseApplyDirectory) throws IOException {
+        List<String> subjects = Lists.newArrayList();
+        int next = readNumber(new File(rebaseApplyDirectory, "next"));
+        int last = readNumber(new File(rebaseApplyDirectory, "last"));
+
+        for (int patch = next; patch <= last; patch++) {
+            File patchFile = new File(rebaseApplyDirectory, String.format("%04d", patch));
+            if (!patchFile.isFile()) {
+                continue;
+            }
+
+            // Only the mail header is read, not the patch itself
+            try (BufferedReader reader = Files.newReader(patchFile, Charsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    if (line.startsWith(SUBJECT_PREFIX)) {
+                        subjects.add(line.substring(SUBJECT_PREFIX.length()));
+                        break;
+                    }
+                }
+            }
+        }
+        return subjects;
+    }
+
+    private static int readNumber(File file) throws IOException {
+        return file.isFile() ? Integer.parseInt(Files.asCharSource(file, Charsets.UTF_8).read().trim()) : 0;
+    }
+
+    /**
+     * Claims the prefetch of the session. Only the first hook of the session is given the claim.
+     * @return true if the issues of the session should be fetched by this hook
+     */
+    boolean claimPrefetch() {
+        File sessionDirectory = new File(CacheDirectory.get(), SESSION_DIRECTORY);
+        removeExpiredClaims(sessionDirectory);
+
+        try {
+            sessionDirectory.mkdirs();
+            return new File(sessionDirectory, id).createNewFile();
+        } catch (IOException e) {
+            logger.debug("Unable to claim the prefetch of {}", this);
+            return false;
+        }
+    }
+
+    private void removeExpiredClaims(File sessionDirectory) {
+        File[] claims = sessionDirectory.listFiles();
+        if (claims == null) {
+            return;
+        }
+
+        long expired = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        for (File claim : claims) {
+            if (claim.lastModified() < expired && !claim.delete()) {
+                logger.debug("Unable to remove {}", claim);
+            }
+        }
+    }
+
+    /**
+     * Gets how long cached issues are used during the session, no matter how volatile the fields are.
+     * @return the time to live in milliseconds
+     */
+    synchronized long getCacheTimeToLive() {
+        if (cacheTimeToLive == null) {
+            cacheTimeToLive = TimeUnit.SECONDS.toMillis(
+                    GitConfig.getCacheTimeToLive("session", SESSION_TIME_TO_LIVE_SECONDS));
+        }
+        return cacheTimeToLive;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Kind", kind).
+                add("Id", id).
+                add("Git directory", gitDirectory).
+                toString();
+    }
+}
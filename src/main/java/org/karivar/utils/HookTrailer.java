@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is responsible for the traceability information the hook adds at the end of the commit message
+ * (the trailer), as it's found in the commit message of an amended, reworded or rebased commit. The trailer is
+ * the summary, parent issue and related issue lines, any additional information and the hook information line.
+ * The hook information line records the hook version, the JIRA issue keys and when the issues were fetched:
+ * <pre>
+ *   Committed using hook v. 0.9.5 [EXAMPLE-1 EXAMPLE-2; 2017-05-01T12:00:00Z]
+ * </pre>
+ * A trailer which is younger than the freshness window, written by the same hook version for the same issues,
+ * is reused instead of asking JIRA again.
+ */
+final class HookTrailer {
+    // The trailer is found within the last lines of the commit message
+    private static final int MAX_TRAILER_BYTES = 16 * 1024;
+    private static final String COMMENT_PREFIX = "#";
+    private static final Pattern HOOK_INFORMATION = Pattern.compile("(\\S+)(?: \\[([^;\\]]*); ([^\\]]+)\\])?");
+
+    private final long start;
+    private final long end;
+    private final List<String> issueLines;
+    private final String hookLine;
+    private final String hookVersion;
+    private final ImmutableSet<String> issueKeys;
+    private final Instant fetched;
+    private final boolean checksSkipped;
+    private final boolean assigneeOverridden;
+
+    private HookTrailer(long start, long end, List<String> issueLines, String hookLine, String hookVersion,
+                        ImmutableSet<String> issueKeys, Instant fetched, boolean checksSkipped,
+                        boolean assigneeOverridden) {
+        this.start = start;
+        this.end = end;
+        this.issueLines = issueLines;
+        this.hookLine = hookLine;
+        this.hookVersion = hookVersion;
+        this.issueKeys = issueKeys;
+        this.fetched = fetched;
+        this.checksSkipped = checksSkipped;
+        this.assigneeOverridden = assigneeOverridden;
+    }
+
+    /**
+     * Gets the hook information line of a new trailer.
+     * @param messages the messages of the hook
+     * @param hookVersion the version of the hook
+     * @param issueKeys the keys of the issues fetched from JIRA. No keys and time are recorded if it's empty.
+     * @param fetched when the issues were fetched
+     * @return the hook information line
+     */
+    static String getHookInformation(ResourceBundle messages, String hookVersion, Collection<String> issueKeys,
+                                     Instant fetched) {
+        String hookInformation = messages.getString("commit.convention.hookinformation") + hookVersion;
+        if (issueKeys.isEmpty()) {
+            return hookInformation;
+        }
+        return hookInformation + " [" + Joiner.on(' ').join(issueKeys) + "; "
+                + fetched.truncatedTo(ChronoUnit.SECONDS) + "]";
+    }
+
+    /**
+     * Finds the trailer at the end of the commit message. Comment lines after the trailer are ignored, as git
+     * removes them from the message.
+     * @param commitMessage the commit message file
+     * @param messages the messages of the hook, which the trailer was written with
+     * @return the trailer, or empty if the commit message doesn't end with a trailer
+     * @throws IOException if the commit message file can't be read
+     */
+    static Optional<HookTrailer> find(CommitMessageFile commitMessage, ResourceBundle messages) throws IOException {
+        List<CommitMessageFile.Line> lines = commitMessage.readLastLines(MAX_TRAILER_BYTES);
+        String hookPrefix = messages.getString("commit.convention.hookinformation");
+
+        int last = lines.size() - 1;
+        while (last >= 0 && (lines.get(last).getText().trim().isEmpty()
+                || lines.get(last).getText().startsWith(COMMENT_PREFIX))) {
+            last--;
+        }
+        if (last < 0 || !lines.get(last).getText().startsWith(hookPrefix)) {
+            return Optional.empty();
+        }
+
+        Matcher matcher = HOOK_INFORMATION.matcher(lines.get(last).getText().substring(hookPrefix.length()));
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+
+        String summaryPrefix = messages.getString("commit.convention.summary");
+        String parentPrefix = messages.getString("commit.convention.parentissue");
+        String relatedPrefix = messages.getString("commit.convention.relatedissue");
+        String assigneeOverridden = messages.getString("commit.convention.assigneeoverridden");
+        List<String> checksSkipped = ImmutableList.of(
+                messages.getString("commit.convention.communicationoverridden"),
+                messages.getString("commit.convention.jiraunavailable"));
+
+        ImmutableList.Builder<String> issueLines = ImmutableList.builder();
+        boolean skipped = false;
+        boolean overridden = false;
+        int first = last;
+        while (first > 0) {
+            String text = lines.get(first - 1).getText();
+            if (text.startsWith(summaryPrefix) || text.startsWith(parentPrefix) || text.startsWith(relatedPrefix)) {
+                issueLines.add(text);
+            } else if (checksSkipped.contains(text)) {
+                skipped = true;
+            } else if (text.equals(assigneeOverridden)) {
+                overridden = true;
+            } else {
+                break;
+            }
+            first--;
+        }
+
+        // The empty line in front of the trailer belongs to it
+        long start = lines.get(first).getStart();
+        if (first > 0 && lines.get(first - 1).getText().trim().isEmpty()) {
+            start = lines.get(first - 1).getStart();
+        }
+
+        return Optional.of(new HookTrailer(start, lines.get(last).getEnd(), issueLines.build().reverse(),
+                lines.get(last).getText(), matcher.group(1), parseIssueKeys(matcher.group(2)),
+                parseInstant(matcher.group(3)), skipped, overridden));
+    }
+
+    private static ImmutableSet<String> parseIssueKeys(String issueKeys) {
+        return issueKeys == null ? ImmutableSet.of()
+                : ImmutableSet.copyOf(Splitter.on(' ').omitEmptyStrings().split(issueKeys));
+    }
+
+    private static Instant parseInstant(String instant) {
+        try {
+            return instant != null ? Instant.parse(instant) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the trailer can be used in place of fetching the issues from JIRA again.
+     * @param issueKeys the keys of the issues of the commit
+     * @param assigneeOverridden true if the assignee is overridden for the commit
+     * @param hookVersion the version of the running hook
+     * @param now the current time
+     * @param freshnessMillis how long the fetched issues are used
+     * @return true if the trailer was written by the same hook version, for the same issues, after the checks
+     * passed, and isn't older than the freshness window
+     */
+    boolean isReusable(Collection<String> issueKeys, boolean assigneeOverridden, String hookVersion, Instant now,
+                       long freshnessMillis) {
+        return fetched != null
+                && !checksSkipped
+                && (assigneeOverridden || !this.assigneeOverridden)
+                && hookVersion.equals(this.hookVersion)
+                && !issueKeys.isEmpty()
+                && this.issueKeys.equals(ImmutableSet.copyOf(issueKeys))
+                && !fetched.isAfter(now)
+                && fetched.plusMillis(freshnessMillis).isAfter(now);
+    }
+
+    /**
+     * Gets the start of the trailer in the commit message file, including the empty line in front of it.
+     * @return the start of the trailer
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the end of the trailer in the commit message file, after the line break of the hook information line.
+     * @return the end of the trailer
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Gets the summary, parent issue and related issue lines of the trailer.
+     * @return the lines in the order they occur
+     */
+    List<String> getIssueLines() {
+        return issueLines;
+    }
+
+    String getHookLine() {
+        return hookLine;
+    }
+
+    String getHookVersion() {
+        return hookVersion;
+    }
+
+    ImmutableSet<String> getIssueKeys() {
+        return issueKeys;
+    }
+
+    Optional<Instant> getFetched() {
+        return Optional.ofNullable(fetched);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Hook version", hookVersion).
+                add("Issue keys", issueKeys).
+                add("Fetched", fetched).
+                add("Checks skipped", checksSkipped).
+                add("Assignee overridden", assigneeOverridden).
+                toString();
+    }
+}
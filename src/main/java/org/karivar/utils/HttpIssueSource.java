@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.CharMatcher;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.CharStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class is responsible for getting resources of the JIRA REST API with the HTTP client of the JDK. Responses
+ * are requested gzip compressed, and every response is read to the end so the connection is kept alive and
+ * reused by the next request. The connect and read timeouts are taken from the deadline of the commit. No other
+ * classes than those of the JDK are loaded.
+ */
+class HttpIssueSource implements IssueSource {
+    private final String jiraAddress;
+    private final String authorization;
+
+    HttpIssueSource(URI jiraAddressUri, String username, String password) {
+        jiraAddress = CharMatcher.is('/').trimTrailingFrom(jiraAddressUri.toString());
+        authorization = "Basic " + BaseEncoding.base64().encode((username + ":" + password)
+                .getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    public Response get(String resource, Deadline deadline) throws IOException {
+        if (deadline.isExpired()) {
+            throw new SocketTimeoutException("No time left to request " + resource);
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(jiraAddress + resource).openConnection();
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("Authorization", authorization);
+        // The TLS handshake and every read of the response are limited by the read timeout
+        connection.setConnectTimeout(deadline.getConnectTimeoutMillis());
+        connection.setReadTimeout(deadline.getReadTimeoutMillis());
+
+        int statusCode = connection.getResponseCode();
+        InputStream body = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (body == null) {
+            return new Response(statusCode, "");
+        }
+
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            body = new GZIPInputStream(body);
+        }
+        try (Reader reader = new InputStreamReader(body, Charsets.UTF_8)) {
+            return new Response(statusCode, CharStreams.toString(reader));
+        }
+    }
+
+    @Override
+    public void close() {
+        // The connections are kept alive by the JDK, and closed when they have been idle for a while
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for keeping fetched JIRA issues on disk, shared by all repositories and worktrees of
+ * the user. Every field is cached with the time it was fetched. Volatile fields (status and assignee) are only
+ * used for a short while, while the other fields are used for longer, so a later commit only has to fetch the
+ * fields which are outdated. Issues which don't exist or can't be accessed are cached for a short while as well.
+ * Several hook processes may use the cache at the same time: entries are replaced atomically and an issue is only
+ * fetched by one process at a time.
+ */
+class IssueCache {
+    private static final Logger logger = LoggerFactory.getLogger(IssueCache.class);
+    private static final int FORMAT_VERSION = 2;
+    private static final String ISSUE_DIRECTORY = "issues";
+    private static final ImmutableSet<String> VOLATILE_FIELDS = ImmutableSet.of("status", "assignee");
+    private static final long LOCK_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final long LOCK_RETRY_INTERVAL = 50;
+    // The share of the time left which is spent waiting for the lock, the rest is kept for fetching the issue
+    private static final int LOCK_SHARE = 2;
+
+    private final File directory;
+    private final long volatileTimeToLive;
+    private final long stableTimeToLive;
+    private final long failureTimeToLive;
+
+    /**
+     * Creates a cache using the time to live configured in the git configuration.
+     * @param identity what the issues are fetched with, e.g the JIRA address and username. Issues fetched with
+     *                 another identity are kept apart.
+     */
+    IssueCache(String identity) {
+        this(identity, 0);
+    }
+
+    /**
+     * Creates a cache using the time to live configured in the git configuration, where no field is outdated
+     * before the given time has passed, e.g during a rebase.
+     * @param identity what the issues are fetched with, e.g the JIRA address and username. Issues fetched with
+     *                 another identity are kept apart.
+     * @param minimumTimeToLive the minimum time to live of every field in milliseconds
+     */
+    IssueCache(String identity, long minimumTimeToLive) {
+        this(new File(new File(CacheDirectory.get(), ISSUE_DIRECTORY),
+                        Hashing.sha256().hashString(identity, Charsets.UTF_8).toString().substring(0, 16)),
+                Math.max(minimumTimeToLive, getVolatileTimeToLive()),
+                Math.max(minimumTimeToLive, TimeUnit.SECONDS.toMillis(GitConfig.getCacheTimeToLive("stable", 3600))),
+                TimeUnit.SECONDS.toMillis(GitConfig.getCacheTimeToLive("failure", 30)));
+    }
+
+    /**
+     * Gets how long volatile fields (status and assignee) are used, as configured in the git configuration.
+     * @return the time to live in milliseconds
+     */
+    static long getVolatileTimeToLive() {
+        return TimeUnit.SECONDS.toMillis(GitConfig.getCacheTimeToLive("volatile", 60));
+    }
+
+    IssueCache(File directory, long volatileTimeToLive, long stableTimeToLive, long failureTimeToLive) {
+        this.directory = directory;
+        this.volatileTimeToLive = volatileTimeToLive;
+        this.stableTimeToLive = stableTimeToLive;
+        this.failureTimeToLive = failureTimeToLive;
+    }
+
+    /**
+     * Looks up an issue in the cache.
+     * @param issueKey the issue key
+     * @param fields the fields which are needed
+     * @return the cached issue and the fields which must be fetched to complete it
+     * @throws IssueKeyNotFoundException if a recent lookup of the issue failed
+     */
+    Lookup lookup(String issueKey, Set<String> fields) throws IssueKeyNotFoundException {
+        Entry entry = read(issueKey);
+        long now = System.currentTimeMillis();
+
+        if (entry.failureMessage != null && now - entry.failedAt < failureTimeToLive) {
+            logger.debug("Using the cached failure of {}", issueKey);
+            throw new IssueKeyNotFoundException(entry.failureMessage, entry.failureStatusCode);
+        }
+
+        Set<String> missingFields = Sets.newTreeSet();
+        for (String field : fields) {
+            Long fetchedAt = entry.fetchedAt.get(field);
+            long timeToLive = VOLATILE_FIELDS.contains(field) ? volatileTimeToLive : stableTimeToLive;
+
+            if (entry.issue == null || fetchedAt == null || now - fetchedAt >= timeToLive) {
+                missingFields.add(field);
+            }
+        }
+        return new Lookup(entry, missingFields);
+    }
+
+    /**
+     * Stores the fetched fields of an issue, together with the fields already cached.
+     * @param lookup the lookup made before fetching the issue
+     * @param fetchedIssue the fetched issue
+     * @return the complete issue
+     */
+    JiraIssue store(Lookup lookup, JiraIssue fetchedIssue) {
+        Entry entry = lookup.entry;
+        long now = System.currentTimeMillis();
+
+        if (entry.issue != null) {
+            entry.issue = merge(entry.issue, fetchedIssue, lookup.missingFields);
+        } else {
+            entry.issue = fetchedIssue;
+            entry.fetchedAt.clear();
+        }
+
+        for (String field : lookup.missingFields) {
+            entry.fetchedAt.put(field, now);
+        }
+        entry.failureMessage = null;
+        write(entry);
+        return entry.issue;
+    }
+
+    /**
+     * Stores that an issue couldn't be fetched, e.g since it doesn't exist or access is denied.
+     * @param issueKey the issue key
+     * @param failure the failure
+     */
+    void storeFailure(String issueKey, IssueKeyNotFoundException failure) {
+        if (failureTimeToLive <= 0) {
+            return;
+        }
+
+        Entry entry = new Entry(issueKey);
+        entry.failureMessage = failure.getMessage();
+        entry.failureStatusCode = failure.getStatusCode().orElse(null);
+        entry.failedAt = System.currentTimeMillis();
+        write(entry);
+    }
+
+    /**
+     * Prevents other hook processes from fetching the issue until the returned lock is closed. If the lock
+     * can't be taken within a few seconds, or within half of the time left before the deadline, the issue is
+     * fetched anyway. A process which holds the lock for long (e.g a slow prefetch from prepare-commit-msg)
+     * therefore never leaves a commit without time to fetch the issue by itself.
+     * @param issueKey the issue key
+     * @param deadline the deadline of the communication with JIRA
+     * @return the lock
+     */
+    Lock lock(String issueKey, Deadline deadline) {
+        File lockFile = new File(directory, getFileName(issueKey) + ".lock");
+        long lockDeadline = System.currentTimeMillis() + Math.min(LOCK_TIMEOUT,
+                deadline.getRemainingMillis() / LOCK_SHARE);
+
+        try {
+            directory.mkdirs();
+            FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+
+            while (true) {
+                FileLock fileLock = null;
+                try {
+                    fileLock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    // Locked by another thread of this process
+                }
+
+                if (fileLock != null) {
+                    return () -> close(channel);
+                }
+                if (System.currentTimeMillis() > lockDeadline) {
+                    logger.debug("Timed out waiting for the lock of {}", issueKey);
+                    close(channel);
+                    return () -> { };
+                }
+
+                try {
+                    Thread.sleep(LOCK_RETRY_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close(channel);
+                    return () -> { };
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to lock {}", lockFile);
+        }
+        return () -> { };
+    }
+
+    /**
+     * Creates an issue with the given fields from the fetched issue and the other fields from the cached issue.
+     * @param cachedIssue the cached issue
+     * @param fetchedIssue the fetched issue
+     * @param fetchedFields the fields which were fetched
+     * @return the merged issue
+     */
+    static JiraIssue merge(JiraIssue cachedIssue, JiraIssue fetchedIssue, Set<String> fetchedFields) {
+        JiraIssue issue = new JiraIssue(cachedIssue.getKey(),
+                (fetchedFields.contains("summary") ? fetchedIssue : cachedIssue).getSummary());
+
+        JiraIssue source = fetchedFields.contains("status") ? fetchedIssue : cachedIssue;
+        issue.setStatus(source.getStatus());
+
+        source = fetchedFields.contains("assignee") ? fetchedIssue : cachedIssue;
+        issue.setAssignee(source.getAssignee());
+
+        source = fetchedFields.contains("issuetype") ? fetchedIssue : cachedIssue;
+        issue.setSubtask(source.isSubtask());
+        issue.setIssueTypeName(source.getIssueTypeName());
+
+        source = fetchedFields.contains("parent") ? fetchedIssue : cachedIssue;
+        issue.setParentIssue(source.getParentIssue());
+
+        source = fetchedFields.contains("issuelinks") ? fetchedIssue : cachedIssue;
+        issue.setRelatedIssues(source.getRelatedIssues());
+        return issue;
+    }
+
+    private Entry read(String issueKey) {
+        Entry entry = new Entry(issueKey);
+        File file = new File(directory, getFileName(issueKey));
+
+        if (!file.isFile()) {
+            return entry;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FORMAT_VERSION || !issueKey.equalsIgnoreCase(input.readUTF())) {
+                return entry;
+            }
+
+            if (input.readBoolean()) {
+                entry.failureMessage = input.readUTF();
+                int statusCode = input.readInt();
+                entry.failureStatusCode = statusCode != 0 ? statusCode : null;
+                entry.failedAt = input.readLong();
+                return entry;
+            }
+
+            int fieldCount = input.readInt();
+            for (int i = 0; i < fieldCount; i++) {
+                entry.fetchedAt.put(input.readUTF(), input.readLong());
+            }
+            int encodedLength = input.readInt();
+            if (encodedLength < 0 || encodedLength > file.length()) {
+                return new Entry(issueKey);
+            }
+            byte[] encodedIssue = new byte[encodedLength];
+            input.readFully(encodedIssue);
+            entry.issue = IssueCodec.decode(encodedIssue);
+
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Unable to read the cached issue {}", file);
+            return new Entry(issueKey);
+        }
+        return entry;
+    }
+
+    private void write(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(entry.issueKey);
+            output.writeBoolean(entry.failureMessage != null);
+
+            if (entry.failureMessage != null) {
+                output.writeUTF(entry.failureMessage);
+                output.writeInt(entry.failureStatusCode != null ? entry.failureStatusCode : 0);
+                output.writeLong(entry.failedAt);
+            } else {
+                output.writeInt(entry.fetchedAt.size());
+                for (Map.Entry<String, Long> fetchedAt : entry.fetchedAt.entrySet()) {
+                    output.writeUTF(fetchedAt.getKey());
+                    output.writeLong(fetchedAt.getValue());
+                }
+                byte[] encodedIssue = IssueCodec.encode(entry.issue);
+                output.writeInt(encodedIssue.length);
+                output.write(encodedIssue);
+            }
+
+            CacheDirectory.writePrivateFile(new File(directory, getFileName(entry.issueKey)), bytes.toByteArray());
+        } catch (IOException e) {
+            logger.debug("Unable to cache the issue {}", entry.issueKey);
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            // Closing the channel releases the lock
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Unable to release the lock");
+        }
+    }
+
+    private static String getFileName(String issueKey) {
+        // Issue keys only contain letters, digits, underscores and a dash, but are case insensitive
+        return issueKey.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9_-]", "_");
+    }
+
+    /**
+     * A lock which is released when closed.
+     */
+    interface Lock extends Closeable {
+        @Override
+        void close();
+    }
+
+    /**
+     * The result of looking up an issue in the cache.
+     */
+    static class Lookup {
+        private final Entry entry;
+        private final Set<String> missingFields;
+
+        private Lookup(Entry entry, Set<String> missingFields) {
+            this.entry = entry;
+            this.missingFields = Collections.unmodifiableSet(missingFields);
+        }
+
+        /**
+         * Gets the cached issue if all needed fields are cached and up to date.
+         * @return the issue or empty if some fields must be fetched
+         */
+        Optional<JiraIssue> getIssue() {
+            if (entry.issue != null && missingFields.isEmpty()) {
+                return Optional.of(entry.issue);
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * Gets the fields which must be fetched, since they're not cached or are outdated.
+         * @return the fields
+         */
+        Set<String> getMissingFields() {
+            return missingFields;
+        }
+    }
+
+    private static class Entry {
+        private final String issueKey;
+        private final Map<String, Long> fetchedAt = Maps.newTreeMap();
+        private JiraIssue issue;
+        private String failureMessage;
+        private Integer failureStatusCode;
+        private long failedAt;
+
+        private Entry(String issueKey) {
+            this.issueKey = issueKey;
+        }
+    }
+}
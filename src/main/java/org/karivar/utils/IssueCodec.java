@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This class is responsible for the binary encoding of JIRA issues, used wherever issues are stored or passed
+ * between processes. The encoding is
+ * <pre>
+ *   version    byte
+ *   strings    varint count, then every distinct string as varint length and UTF-8 bytes
+ *   fields     tag byte, varint length and the value of each field which is set
+ * </pre>
+ * Every string is stored once and referenced by its index plus one (0 means null), so repeated statuses, issue
+ * types and names cost a single byte. Fields which are null are left out, while empty optionals are stored
+ * without a value. The length of each field makes it possible to skip to a single field and decode only the
+ * strings it references, see {@link #readString(byte[], Field)}.
+ */
+final class IssueCodec {
+    static final int VERSION = 1;
+
+    /**
+     * The encoded fields. The tags must never be reused for something else.
+     */
+    enum Field {
+        KEY(1),
+        SUMMARY(2),
+        STATUS(3),
+        ASSIGNEE(4),
+        // 5 was the resolution, which no check reads
+        SUBTASK(6),
+        ISSUE_TYPE_NAME(7),
+        PARENT_ISSUE(8),
+        RELATED_ISSUES(9);
+
+        private final int tag;
+
+        Field(int tag) {
+            this.tag = tag;
+        }
+    }
+
+    private IssueCodec() {
+    }
+
+    /**
+     * Encodes the issue.
+     * @param issue the issue
+     * @return the encoded issue
+     */
+    static byte[] encode(JiraIssue issue) {
+        Encoder encoder = new Encoder();
+
+        encoder.writeStringField(Field.KEY, issue.getKey());
+        encoder.writeStringField(Field.SUMMARY, issue.getSummary());
+        encoder.writeStringField(Field.STATUS, issue.getStatus());
+
+        if (issue.getAssignee() != null) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            if (issue.getAssignee().isPresent()) {
+                encoder.writeReference(value, issue.getAssignee().get().getName());
+                encoder.writeReference(value, issue.getAssignee().get().getDisplayName());
+            }
+            encoder.writeField(Field.ASSIGNEE, value);
+        }
+
+        if (issue.isSubtask()) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            value.write(1);
+            encoder.writeField(Field.SUBTASK, value);
+        }
+
+        encoder.writeStringField(Field.ISSUE_TYPE_NAME, issue.getIssueTypeName());
+
+        if (issue.getParentIssue() != null) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            if (issue.getParentIssue().isPresent()) {
+                encoder.writeReference(value, issue.getParentIssue().get().getKey());
+                encoder.writeReference(value, issue.getParentIssue().get().getSummary());
+            }
+            encoder.writeField(Field.PARENT_ISSUE, value);
+        }
+
+        if (issue.getRelatedIssues() != null) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            writeVarint(value, issue.getRelatedIssues().size());
+            for (BasicJiraIssue relatedIssue : issue.getRelatedIssues()) {
+                encoder.writeReference(value, relatedIssue.getKey());
+                encoder.writeReference(value, relatedIssue.getSummary());
+            }
+            encoder.writeField(Field.RELATED_ISSUES, value);
+        }
+
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Decodes an issue.
+     * @param data the encoded issue
+     * @return the issue
+     * @throws IllegalArgumentException if the data isn't an encoded issue of a known version
+     */
+    static JiraIssue decode(byte[] data) {
+        Decoder decoder = new Decoder(data);
+        String[] strings = new String[decoder.readCount()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = decoder.readUtf8();
+        }
+
+        String key = null;
+        String summary = null;
+        String status = null;
+        Optional<User> assignee = null;
+        boolean subtask = false;
+        String issueTypeName = null;
+        Optional<BasicJiraIssue> parentIssue = null;
+        List<BasicJiraIssue> relatedIssues = null;
+
+        while (decoder.hasRemaining()) {
+            int tag = decoder.readByte();
+            int length = decoder.readVarint();
+            decoder.checkRemaining(length);
+            int end = decoder.position + length;
+
+            if (tag == Field.KEY.tag) {
+                key = decoder.readReference(strings);
+            } else if (tag == Field.SUMMARY.tag) {
+                summary = decoder.readReference(strings);
+            } else if (tag == Field.STATUS.tag) {
+                status = decoder.readReference(strings);
+            } else if (tag == Field.ASSIGNEE.tag) {
+                assignee = decoder.position < end
+                        ? Optional.of(new User(decoder.readReference(strings), decoder.readReference(strings)))
+                        : Optional.empty();
+            } else if (tag == Field.SUBTASK.tag) {
+                subtask = decoder.readByte() != 0;
+            } else if (tag == Field.ISSUE_TYPE_NAME.tag) {
+                issueTypeName = decoder.readReference(strings);
+            } else if (tag == Field.PARENT_ISSUE.tag) {
+                parentIssue = decoder.position < end
+                        ? Optional.of(new BasicJiraIssue(decoder.readReference(strings),
+                                decoder.readReference(strings)))
+                        : Optional.empty();
+            } else if (tag == Field.RELATED_ISSUES.tag) {
+                int count = decoder.readCount();
+                relatedIssues = Lists.newArrayListWithCapacity(count);
+                for (int i = 0; i < count; i++) {
+                    relatedIssues.add(new BasicJiraIssue(decoder.readReference(strings),
+                            decoder.readReference(strings)));
+                }
+            }
+            // Fields added by later versions are skipped
+            decoder.position = end;
+        }
+
+        JiraIssue issue = new JiraIssue(key, summary);
+        issue.setStatus(status);
+        issue.setAssignee(assignee);
+        issue.setSubtask(subtask);
+        issue.setIssueTypeName(issueTypeName);
+        issue.setParentIssue(parentIssue);
+        issue.setRelatedIssues(relatedIssues);
+        return issue;
+    }
+
+    /**
+     * Reads a single string field without decoding the rest of the issue, e.g the status.
+     * @param data the encoded issue
+     * @param field the field. For assignees the username is read and for parent issues the key is read.
+     * @return the value or null if the field isn't set
+     * @throws IllegalArgumentException if the data isn't an encoded issue of a known version or the field
+     * isn't a string field
+     */
+    static String readString(byte[] data, Field field) {
+        if (field == Field.SUBTASK || field == Field.RELATED_ISSUES) {
+            throw new IllegalArgumentException(field + " isn't a string field");
+        }
+
+        Decoder decoder = new Decoder(data);
+        int stringTable = decoder.position;
+        int stringCount = decoder.readVarint();
+        for (int i = 0; i < stringCount; i++) {
+            decoder.skipUtf8();
+        }
+
+        while (decoder.hasRemaining()) {
+            int tag = decoder.readByte();
+            int length = decoder.readVarint();
+
+            if (tag == field.tag) {
+                if (length == 0) {
+                    return null;
+                }
+                int index = decoder.readVarint() - 1;
+                if (index < 0) {
+                    return null;
+                }
+
+                // Only the referenced string is decoded
+                decoder.position = stringTable;
+                decoder.readVarint();
+                for (int i = 0; i < index; i++) {
+                    decoder.skipUtf8();
+                }
+                return decoder.readUtf8();
+            }
+            decoder.position += length;
+        }
+        return null;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static class Encoder {
+        private final Map<String, Integer> stringIndexes = Maps.newLinkedHashMap();
+        private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+
+        void writeReference(ByteArrayOutputStream output, String value) {
+            if (value == null) {
+                writeVarint(output, 0);
+                return;
+            }
+
+            Integer index = stringIndexes.get(value);
+            if (index == null) {
+                index = stringIndexes.size();
+                stringIndexes.put(value, index);
+            }
+            writeVarint(output, index + 1);
+        }
+
+        void writeStringField(Field field, String value) {
+            if (value != null) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                writeReference(output, value);
+                writeField(field, output);
+            }
+        }
+
+        void writeField(Field field, ByteArrayOutputStream value) {
+            fields.write(field.tag);
+            writeVarint(fields, value.size());
+            fields.write(value.toByteArray(), 0, value.size());
+        }
+
+        byte[] toByteArray() {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(fields.size() + 16 * stringIndexes.size());
+            output.write(VERSION);
+            writeVarint(output, stringIndexes.size());
+
+            for (String value : stringIndexes.keySet()) {
+                byte[] bytes = value.getBytes(Charsets.UTF_8);
+                writeVarint(output, bytes.length);
+                output.write(bytes, 0, bytes.length);
+            }
+
+            output.write(fields.toByteArray(), 0, fields.size());
+            return output.toByteArray();
+        }
+    }
+
+    private static class Decoder {
+        private final byte[] data;
+        private int position;
+
+        Decoder(byte[] data) {
+            this.data = data;
+            if (data.length == 0 || data[0] != VERSION) {
+                throw new IllegalArgumentException("Unknown encoding of JIRA issue");
+            }
+            position = 1;
+        }
+
+        boolean hasRemaining() {
+            return position < data.length;
+        }
+
+        int readByte() {
+            checkRemaining(1);
+            return data[position++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed encoding of JIRA issue");
+        }
+
+        int readCount() {
+            // Every counted element takes at least one byte
+            int count = readVarint();
+            checkRemaining(count);
+            return count;
+        }
+
+        String readUtf8() {
+            int length = readVarint();
+            checkRemaining(length);
+            String value = new String(data, position, length, Charsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skipUtf8() {
+            int length = readVarint();
+            checkRemaining(length);
+            position += length;
+        }
+
+        String readReference(String[] strings) {
+            int index = readVarint();
+            if (index == 0) {
+                return null;
+            }
+            if (index > strings.length) {
+                throw new IllegalArgumentException("Malformed encoding of JIRA issue");
+            }
+            return strings[index - 1];
+        }
+
+        private void checkRemaining(int length) {
+            if (length < 0 || position + length > data.length) {
+                throw new IllegalArgumentException("Malformed encoding of JIRA issue");
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This interface is responsible for fetching JIRA issues on behalf of the git hook. The hook only knows this
+ * interface, so the classes which talk to JIRA aren't loaded until the first issue is actually fetched.
+ */
+interface IssueFetcher extends AutoCloseable {
+    long CLOSE_TIMEOUT_MILLIS = 200;
+
+    /**
+     * Fetches the populated JIRA issues for the given issue keys.
+     * @param jiraIssueKeys the given jira issue ids
+     * @param issueLinks a list containing all names of JIRA issue link names
+     * @param fetchPlan the fields which are needed by the enabled checks and commit message sections
+     * @param parallelism the maximum number of issues which are fetched at the same time
+     * @param session the session the commit is part of, during which cached issues are used for longer
+     * @param deadline the deadline of the communication with JIRA
+     * @return the JIRA issues in the order of the keys. Issues which couldn't be fetched are left out.
+     * @throws IssueKeyNotFoundException in case of problems with any of the issues
+     */
+    List<JiraIssue> getJiraPopulatedIssues(List<String> jiraIssueKeys, List<String> issueLinks,
+                                           FetchPlan fetchPlan, int parallelism, Optional<HookSession> session,
+                                           Deadline deadline)
+            throws IssueKeyNotFoundException;
+
+    /**
+     * Fetches the JIRA issues for the given issue keys into the issue cache, so later commits find them there.
+     * @param jiraIssueKeys the given jira issue ids
+     * @param issueLinks a list containing all names of JIRA issue link names
+     * @param fetchPlan the fields which are needed by the enabled checks and commit message sections
+     * @param session the session the issues are fetched for, during which cached issues are used for longer
+     * @param deadline the deadline of the communication with JIRA
+     * @return the number of issues fetched
+     * @throws IssueKeyNotFoundException if JIRA can't be searched
+     */
+    int prefetchJiraIssues(Collection<String> jiraIssueKeys, List<String> issueLinks, FetchPlan fetchPlan,
+                           Optional<HookSession> session, Deadline deadline)
+            throws IssueKeyNotFoundException;
+
+    /**
+     * Closes the connection to JIRA, waiting at most {@link #CLOSE_TIMEOUT_MILLIS} for it to close.
+     */
+    @Override
+    void close();
+
+    /**
+     * Closes the connection to JIRA. Closing it again does nothing.
+     * @param timeoutMillis the maximum time to wait for the connection to close
+     * @return true if the connection was closed within the time limit
+     */
+    boolean close(long timeoutMillis);
+}
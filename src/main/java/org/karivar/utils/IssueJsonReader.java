@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.collect.Lists;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class is responsible for mapping the response of the JIRA issue resource to a {@link JiraIssue}. The
+ * response is read once with a {@link JsonPullParser}, picking out these paths and skipping everything else:
+ * <pre>
+ *   key
+ *   fields.summary
+ *   fields.status.name
+ *   fields.issuetype.name, fields.issuetype.subtask
+ *   fields.assignee.name, fields.assignee.displayName
+ *   fields.parent.key, fields.parent.fields.summary
+ *   fields.issuelinks[*].type.name
+ *   fields.issuelinks[*].outwardIssue (or inwardIssue).key and .fields.summary
+ * </pre>
+ */
+final class IssueJsonReader {
+    private static final String[] ISSUE_NAMES = {"key", "fields"};
+    private static final String[] FIELD_NAMES = {"summary", "status", "issuetype", "assignee", "parent",
+            "issuelinks"};
+    private static final String[] NAME = {"name"};
+    private static final String[] ISSUE_TYPE_NAMES = {"name", "subtask"};
+    private static final String[] USER_NAMES = {"name", "displayName"};
+    private static final String[] SUMMARY_NAMES = {"summary"};
+    private static final String[] ISSUE_LINK_NAMES = {"type", "outwardIssue", "inwardIssue"};
+
+    private final JsonPullParser parser;
+    private final List<String> issueLinks;
+    private String issueSummary;
+
+    private IssueJsonReader(String json, List<String> issueLinks) {
+        parser = new JsonPullParser(json);
+        this.issueLinks = issueLinks;
+    }
+
+    /**
+     * Maps a response of the JIRA issue resource.
+     * @param json the response
+     * @param issueLinks the names of the JIRA issue links of the related issues
+     * @return the JIRA issue
+     * @throws IllegalArgumentException if the response is malformed or has no key or fields
+     */
+    static JiraIssue read(String json, List<String> issueLinks) {
+        return new IssueJsonReader(json, issueLinks).readIssue();
+    }
+
+    private JiraIssue readIssue() {
+        String key = null;
+        JiraIssue fields = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.selectName(ISSUE_NAMES)) {
+                case 0:
+                    key = parser.nextString();
+                    break;
+                case 1:
+                    fields = readFields();
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if (key == null || fields == null) {
+            throw new IllegalArgumentException("The JIRA issue has no key or fields");
+        }
+
+        JiraIssue jiraIssue = new JiraIssue(key, issueSummary);
+        jiraIssue.setStatus(fields.getStatus());
+        jiraIssue.setAssignee(fields.getAssignee());
+        jiraIssue.setSubtask(fields.isSubtask());
+        jiraIssue.setIssueTypeName(fields.getIssueTypeName());
+        jiraIssue.setParentIssue(fields.getParentIssue());
+        jiraIssue.setRelatedIssues(fields.getRelatedIssues());
+        return jiraIssue;
+    }
+
+    private JiraIssue readFields() {
+        if (nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+            throw new IllegalArgumentException("The fields of the JIRA issue isn't an object");
+        }
+
+        // The key and summary are filled in by the caller
+        JiraIssue fields = new JiraIssue(null, null);
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.selectName(FIELD_NAMES)) {
+                case 0:
+                    issueSummary = parser.nextString();
+                    break;
+                case 1:
+                    fields.setStatus(readName());
+                    break;
+                case 2:
+                    readIssueType(fields);
+                    break;
+                case 3:
+                    User assignee = readUser();
+                    if (assignee != null) {
+                        fields.setAssignee(Optional.of(assignee));
+                    }
+                    break;
+                case 4:
+                    BasicJiraIssue parentIssue = readBasicIssue();
+                    if (parentIssue != null) {
+                        fields.setParentIssue(Optional.of(parentIssue));
+                    }
+                    break;
+                case 5:
+                    if (!nullOrSkipped(JsonPullParser.Token.ARRAY)) {
+                        fields.setRelatedIssues(readRelatedIssues());
+                    }
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return fields;
+    }
+
+    private void readIssueType(JiraIssue fields) {
+        if (nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+            return;
+        }
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.selectName(ISSUE_TYPE_NAMES)) {
+                case 0:
+                    fields.setIssueTypeName(parser.nextString());
+                    break;
+                case 1:
+                    fields.setSubtask(parser.nextBoolean());
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+    }
+
+    private User readUser() {
+        if (nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+            return null;
+        }
+
+        String name = null;
+        String displayName = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.selectName(USER_NAMES)) {
+                case 0:
+                    name = parser.nextString();
+                    break;
+                case 1:
+                    displayName = parser.nextString();
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return new User(name, displayName);
+    }
+
+    /**
+     * Reads the key and summary of an issue which is part of another issue, e.g the parent issue.
+     * @return the issue or null if it's null
+     */
+    private BasicJiraIssue readBasicIssue() {
+        if (nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+            return null;
+        }
+
+        String key = null;
+        String summary = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.selectName(ISSUE_NAMES)) {
+                case 0:
+                    key = parser.nextString();
+                    break;
+                case 1:
+                    if (!nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+                        // Linked issues normally include their summary, but it may be left out
+                        summary = readSingleString(SUMMARY_NAMES);
+                    }
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if (key == null) {
+            throw new IllegalArgumentException("The linked JIRA issue has no key");
+        }
+        return new BasicJiraIssue(key, summary);
+    }
+
+    private List<BasicJiraIssue> readRelatedIssues() {
+        List<BasicJiraIssue> relatedJiraIssues = Lists.newArrayList();
+
+        // The key and summary of the linked issue are part of the link, so no further requests are needed
+        parser.beginArray();
+        while (parser.hasNext()) {
+            if (nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+                continue;
+            }
+
+            String issueLinkName = null;
+            boolean typeFound = false;
+            boolean outwardFound = false;
+            BasicJiraIssue outwardIssue = null;
+            BasicJiraIssue inwardIssue = null;
+
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.selectName(ISSUE_LINK_NAMES)) {
+                    case 0:
+                        typeFound = parser.peek() == JsonPullParser.Token.OBJECT;
+                        issueLinkName = readName();
+                        break;
+                    case 1:
+                        outwardFound = true;
+                        outwardIssue = readBasicIssue();
+                        break;
+                    case 2:
+                        inwardIssue = readBasicIssue();
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            parser.endObject();
+
+            BasicJiraIssue relatedIssue = outwardFound ? outwardIssue : inwardIssue;
+            for (String issueLinkTypeName : issueLinks) {
+                if (typeFound && relatedIssue != null && issueLinkTypeName.equalsIgnoreCase(issueLinkName)) {
+                    relatedJiraIssues.add(relatedIssue);
+                }
+            }
+        }
+        parser.endArray();
+        return relatedJiraIssues;
+    }
+
+    private String readName() {
+        if (nullOrSkipped(JsonPullParser.Token.OBJECT)) {
+            return null;
+        }
+        return readSingleString(NAME);
+    }
+
+    /**
+     * Reads a single string member of the object at the current position, skipping all other members.
+     */
+    private String readSingleString(String[] names) {
+        String value = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            if (parser.selectName(names) == 0) {
+                value = parser.nextString();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return value;
+    }
+
+    /**
+     * Skips the next value unless it's of the expected kind.
+     * @return true if the value was skipped
+     */
+    private boolean nullOrSkipped(JsonPullParser.Token expected) {
+        if (parser.peek() != expected) {
+            parser.skipValue();
+            return true;
+        }
+        return false;
+    }
+}
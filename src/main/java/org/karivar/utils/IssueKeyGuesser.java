@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * This class is responsible for guessing which JIRA issues the next commit will mention, before the commit
+ * message is written. The keys are taken from the first of these which mentions any: the commit message git
+ * prepared (a template, a message given with -m, the message of an amended commit or a merge), the name of the
+ * current branch (e.g feature/EXAMPLE-431-login-timeout) and the subject of the previous commit.
+ */
+final class IssueKeyGuesser {
+    private static final Logger logger = LoggerFactory.getLogger(IssueKeyGuesser.class);
+    private static final String BRANCH_REFERENCE_PREFIX = "ref: refs/heads/";
+
+    private final IssueKeyMatcher matcher;
+
+    IssueKeyGuesser(IssueKeyMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Guesses the issue keys of the commit which is about to be made.
+     * @param commitMessageFile the commit message file prepared by git
+     * @return the issue keys in the order they're found, or an empty set if there's no good guess
+     */
+    Set<String> guess(File commitMessageFile) {
+        Set<String> issueKeys = findIssueKeys(readCommitHeader(commitMessageFile));
+
+        if (issueKeys.isEmpty()) {
+            issueKeys = findIssueKeys(readBranchName(commitMessageFile.getAbsoluteFile().getParentFile())
+                    .orElse(null));
+        }
+        if (issueKeys.isEmpty()) {
+            issueKeys = findIssueKeys(readPreviousSubject());
+        }
+        return issueKeys;
+    }
+
+    /**
+     * Finds the issue keys in the given text.
+     * @param text the text, e.g a branch name
+     * @return the issue keys in the order they occur, without duplicates
+     */
+    Set<String> findIssueKeys(String text) {
+        if (Strings.isNullOrEmpty(text)) {
+            return Collections.emptySet();
+        }
+
+        Set<String> issueKeys = Sets.newLinkedHashSet();
+        for (IssueKeyMatcher.Match match : matcher.findAll(text)) {
+            issueKeys.add(match.getKey());
+        }
+        return issueKeys;
+    }
+
+    /**
+     * Reads the name of the current branch from the HEAD of the given git directory, without starting git.
+     * @param gitDirectory the git directory, e.g .git or the git directory of a worktree
+     * @return the branch name, or empty if HEAD is detached or can't be read
+     */
+    static Optional<String> readBranchName(File gitDirectory) {
+        File head = new File(gitDirectory, "HEAD");
+
+        try {
+            String reference = head.isFile() ? Files.asCharSource(head, Charsets.UTF_8).readFirstLine() : null;
+            if (reference != null && reference.startsWith(BRANCH_REFERENCE_PREFIX)) {
+                return Optional.of(reference.substring(BRANCH_REFERENCE_PREFIX.length()).trim());
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to read {}", head);
+        }
+        return Optional.empty();
+    }
+
+    private static String readCommitHeader(File commitMessageFile) {
+        try {
+            CommitMessageFile commitMessage = CommitMessageFile.read(commitMessageFile);
+            // A template starting with a comment has no header
+            return commitMessage.getHeader().startsWith("#") ? null : commitMessage.getHeader();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String readPreviousSubject() {
+        try {
+            Process process = new ProcessBuilder("git", "log", "-1", "--format=%s").start();
+            String subject = CharStreams.toString(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+            return process.waitFor() == 0 ? subject.trim() : null;
+        } catch (IOException e) {
+            logger.debug("Unable to read the previous commit");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is responsible for finding JIRA issue keys (e.g EXAMPLE-12) of the configured JIRA projects in a
+ * text. The project keys are compiled into a case insensitive trie once. A key is only found where a word starts,
+ * so every position of the text is visited by at most one walk down the trie, and keys wrapped in punctuation
+ * (e.g [EXAMPLE-12] or EXAMPLE-12:) are found as well. Nothing is allocated except the matches themselves.
+ */
+final class IssueKeyMatcher {
+    private static IssueKeyMatcher lastMatcher;
+
+    private final String projectKeys;
+    private final Node root = new Node();
+
+    private IssueKeyMatcher(String projectKeys) {
+        this.projectKeys = projectKeys;
+
+        for (String projectKey : Splitter.on(CharMatcher.whitespace()).omitEmptyStrings().split(projectKeys)) {
+            // Patterns such as EXAMPLE- are accepted as well
+            String canonicalKey = CharMatcher.is('-').trimTrailingFrom(projectKey).toUpperCase(Locale.ROOT);
+            if (!canonicalKey.isEmpty()) {
+                root.add(canonicalKey, 0);
+            }
+        }
+    }
+
+    /**
+     * Gets the matcher for the given JIRA project keys. The matcher is only compiled again when the project keys
+     * change.
+     * @param projectKeys the JIRA project keys separated by space, as in githook.jira.projectkey
+     * @return the matcher
+     */
+    static synchronized IssueKeyMatcher forProjectKeys(String projectKeys) {
+        if (lastMatcher == null || !lastMatcher.projectKeys.equals(projectKeys)) {
+            lastMatcher = new IssueKeyMatcher(projectKeys);
+        }
+        return lastMatcher;
+    }
+
+    /**
+     * Finds every JIRA issue key in the text.
+     * @param text the text, e.g the first line of the commit message
+     * @return the matches in the order they occur in the text
+     */
+    List<Match> findAll(CharSequence text) {
+        ImmutableList.Builder<Match> matches = null;
+        int length = text.length();
+        int position = 0;
+
+        while (position < length) {
+            if (isWordCharacter(text.charAt(position))
+                    && (position == 0 || !isWordCharacter(text.charAt(position - 1)))) {
+                Match match = matchAt(text, position);
+
+                if (match != null) {
+                    if (matches == null) {
+                        matches = ImmutableList.builder();
+                    }
+                    matches.add(match);
+                    position = match.getEnd();
+                    continue;
+                }
+            }
+            position++;
+        }
+        return matches != null ? matches.build() : ImmutableList.of();
+    }
+
+    /**
+     * Matches the longest project key, followed by a dash and digits, at the given position.
+     * @return the match or null if there is no issue key at the position
+     */
+    private Match matchAt(CharSequence text, int start) {
+        Node node = root;
+        int position = start;
+        int end = -1;
+        String projectKey = null;
+
+        while (node != null && position < text.length()) {
+            node = node.get(Character.toUpperCase(text.charAt(position)));
+            position++;
+
+            if (node != null && node.projectKey != null) {
+                int issueEnd = matchNumber(text, position);
+                if (issueEnd > 0) {
+                    end = issueEnd;
+                    projectKey = node.projectKey;
+                }
+            }
+        }
+        return projectKey != null ? new Match(text, start, end, projectKey) : null;
+    }
+
+    private static int matchNumber(CharSequence text, int dash) {
+        if (dash >= text.length() || text.charAt(dash) != '-') {
+            return -1;
+        }
+
+        int position = dash + 1;
+        while (position < text.length() && text.charAt(position) >= '0' && text.charAt(position) <= '9') {
+            position++;
+        }
+
+        if (position == dash + 1 || (position < text.length() && isWordCharacter(text.charAt(position)))) {
+            return -1;
+        }
+        return position;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Project keys", projectKeys).
+                toString();
+    }
+
+    /**
+     * A JIRA issue key found in a text.
+     */
+    static final class Match {
+        private final int start;
+        private final int end;
+        private final String key;
+
+        private Match(CharSequence text, int start, int end, String projectKey) {
+            this.start = start;
+            this.end = end;
+            this.key = projectKey + text.subSequence(start + projectKey.length(), end);
+        }
+
+        int getStart() {
+            return start;
+        }
+
+        int getEnd() {
+            return end;
+        }
+
+        /**
+         * Gets the issue key with the project key in upper case, e.g EXAMPLE-12.
+         * @return the issue key
+         */
+        String getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).
+                    add("Key", key).
+                    add("Start", start).
+                    add("End", end).
+                    toString();
+        }
+    }
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private String projectKey;
+
+        Node get(char label) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void add(String key, int index) {
+            if (index == key.length()) {
+                projectKey = key;
+                return;
+            }
+
+            char label = key.charAt(index);
+            Node child = get(label);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = label;
+                children[children.length - 1] = child;
+            }
+            child.add(key, index + 1);
+        }
+    }
+}
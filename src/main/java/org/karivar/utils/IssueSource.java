@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.MoreObjects;
+
+import java.io.IOException;
+
+/**
+ * This interface is responsible for transporting the requests of {@link JiraConnector} to the JIRA REST API.
+ * The JSON of the responses is mapped by the connector, so every source gives the same JIRA issues.
+ */
+interface IssueSource extends AutoCloseable {
+
+    /**
+     * Gets a resource of the JIRA REST API.
+     * @param resource the path and query of the resource, relative to the JIRA address
+     * @param deadline the deadline of the communication with JIRA
+     * @return the response, including responses with an error status code
+     * @throws IOException if JIRA can't be reached or the response can't be read. A
+     * {@link java.net.SocketTimeoutException} is thrown if the deadline expires.
+     */
+    Response get(String resource, Deadline deadline) throws IOException;
+
+    /**
+     * Releases the connections of the source.
+     */
+    @Override
+    void close();
+
+    /**
+     * The status code and body of a response from JIRA.
+     */
+    final class Response {
+        private final int statusCode;
+        private final String body;
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        String getBody() {
+            return body;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).
+                    add("Status code", statusCode).
+                    toString();
+        }
+    }
+}
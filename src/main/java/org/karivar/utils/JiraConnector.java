@@ -7,33 +7,62 @@
  */
 package org.karivar.utils;
 
-import com.atlassian.jira.rest.client.api.IssueRestClient;
-import com.atlassian.jira.rest.client.api.JiraRestClient;
-import com.atlassian.jira.rest.client.api.RestClientException;
-import com.atlassian.jira.rest.client.api.domain.Issue;
-import com.atlassian.jira.rest.client.api.domain.IssueField;
-import com.atlassian.jira.rest.client.api.domain.IssueLink;
-import com.atlassian.jira.rest.client.internal.async.AsynchronousJiraRestClientFactory;
-import com.atlassian.util.concurrent.Promise;
 import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.karivar.utils.domain.*;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.util.*;
-
-class JiraConnector {
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class is responsible for fetching JIRA issues. The issue is fetched as JSON with a single request, and
+ * everything the hook needs (including the key and summary of the parent issue and the related issues) is
+ * mapped from that response. Summaries which are missing from the response are fetched afterwards with a
+ * batched search. The connector owns the connection to JIRA until it's closed, and closing it never takes
+ * longer than {@link #CLOSE_TIMEOUT_MILLIS}, so the hook can exit as soon as the commit message is written.
+ */
+class JiraConnector implements IssueFetcher {
+
+    private static final String ISSUE_RESOURCE = "/rest/api/2/issue/";
+    private static final String SEARCH_RESOURCE = "/rest/api/2/search";
+    private static final int SEARCH_PAGE_SIZE = 100;
+    // Keeps the search URL well below the length accepted by common web servers and proxies. The JQL is
+    // measured as it's sent, URL encoded.
+    private static final int MAX_ENCODED_JQL_LENGTH = 2000;
+    private static final String KEY_QUERY_PREFIX = "key in (";
+    private static final String KEY_QUERY_SEPARATOR = ", ";
+    private static final String KEY_QUERY_SUFFIX = ")";
+    private static final String JRJC_TRANSPORT = "jrjc";
 
     private final Logger logger = LoggerFactory.getLogger(JiraConnector.class);
-    private IssueRestClient issueRestClient;
+    private IssueSource issueSource;
+    private CircuitBreaker circuitBreaker;
+    private URI jiraAddressUri;
+    private String cacheIdentity;
     private final ResourceBundle messages;
+    private boolean closed;
 
     JiraConnector(ResourceBundle bundle) {
        messages = bundle;
@@ -49,37 +78,289 @@ class JiraConnector {
                                  final String jiraEncodedPassword,
                                  final String jiraAddress) {
         if (jiraUsername != null && jiraEncodedPassword != null && jiraAddress != null) {
-            final AsynchronousJiraRestClientFactory factory = new AsynchronousJiraRestClientFactory();
-
-            URI jiraAddressUri = getJiraAddressUri(jiraAddress);
+            jiraAddressUri = getJiraAddressUri(jiraAddress);
             String decodedPassword = getDecodedPassword(jiraEncodedPassword);
 
-            JiraRestClient restClient = factory.createWithBasicHttpAuthentication(
-                    jiraAddressUri, jiraUsername, decodedPassword);
+            // Cached issues are only shared between connections with the same address and credentials
+            cacheIdentity = Joiner.on('|').join(jiraAddress, jiraUsername, jiraEncodedPassword,
+                    messages.getLocale());
 
-            issueRestClient = restClient.getIssueClient();
+            if (jiraAddressUri != null) {
+                issueSource = createIssueSource(GitConfig.getJiraTransport(), jiraUsername, decodedPassword);
+                circuitBreaker = new CircuitBreaker(jiraAddress, GitConfig.getJiraCircuitBreakerThreshold());
+                if (GitConfig.isJiraHedgingEnabled()) {
+                    issueSource = new HedgedIssueSource(issueSource, new LatencyTracker(jiraAddress));
+                }
+            }
 
         } else {
             logger.error(messages.getString("error.jira.connection"));
         }
     }
 
+    private IssueSource createIssueSource(String transport, String jiraUsername, String decodedPassword) {
+        if (JRJC_TRANSPORT.equalsIgnoreCase(transport)) {
+            logger.debug("Using the JIRA REST Java client");
+            return new JrjcIssueSource(jiraAddressUri, jiraUsername, decodedPassword);
+        }
+        return new HttpIssueSource(jiraAddressUri, jiraUsername, decodedPassword);
+    }
+
+    /**
+     * Closes the connection to JIRA, waiting at most {@link #CLOSE_TIMEOUT_MILLIS} for it to close.
+     */
+    @Override
+    public void close() {
+        close(CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Closes the connection to JIRA. The connection is closed by a daemon thread, so a client which doesn't
+     * close in time is simply left behind. Closing the connector again does nothing.
+     * @param timeoutMillis the maximum time to wait for the connection to close
+     * @return true if the connection was closed within the time limit
+     */
+    @Override
+    public synchronized boolean close(long timeoutMillis) {
+        if (closed) {
+            return true;
+        }
+        closed = true;
+
+        if (issueSource == null) {
+            return true;
+        }
+
+        long start = System.nanoTime();
+        IssueSource source = issueSource;
+
+        Thread closer = new Thread(() -> {
+            try {
+                source.close();
+            } catch (RuntimeException e) {
+                logger.debug("Couldn't close the connection to JIRA", e);
+            }
+        }, "githook-jira-close");
+        closer.setDaemon(true);
+        closer.start();
+
+        try {
+            closer.join(Math.max(timeoutMillis, 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (closer.isAlive()) {
+            logger.debug("The connection to JIRA wasn't closed within {} ms", elapsedMillis);
+            return false;
+        }
+        logger.debug("Closed the connection to JIRA in {} ms", elapsedMillis);
+        return true;
+    }
+
     /**
      * Fetches the populated JIRA issue for the given issue key.
      * @param jiraIssueKey the given jira issue id
      * @param issueLinks a list containing all names of JIRA issue link names
-     * @return the fully populated JIRA issue
+     * @param fetchPlan the fields which are needed by the enabled checks and commit message sections
+     * @param session the session the commit is part of, during which cached issues are used for longer
+     * @param deadline the deadline of the communication with JIRA
+     * @return the JIRA issue, populated with the planned fields
      * @throws IssueKeyNotFoundException in case of problems (connectivity, malformed messages, invalid argument, etc.)
      */
-    JiraIssue getJiraPopulatedIssue(Optional<String> jiraIssueKey, List<String> issueLinks)
+    JiraIssue getJiraPopulatedIssue(Optional<String> jiraIssueKey, List<String> issueLinks, FetchPlan fetchPlan,
+                                    Optional<HookSession> session, Deadline deadline)
+            throws IssueKeyNotFoundException {
+
+        if (!jiraIssueKey.isPresent() || issueSource == null) {
+            return null;
+        }
+        return getJiraPopulatedIssue(jiraIssueKey.get(), issueLinks, fetchPlan, getIssueCache(issueLinks, session),
+                deadline);
+    }
+
+    private JiraIssue getJiraPopulatedIssue(String issueKey, List<String> issueLinks, FetchPlan fetchPlan,
+                                            IssueCache issueCache, Deadline deadline)
             throws IssueKeyNotFoundException {
+        IssueCache.Lookup lookup = issueCache.lookup(issueKey, fetchPlan.getFields());
+        if (lookup.getIssue().isPresent()) {
+            logger.debug("Using the cached issue {}", issueKey);
+            return lookup.getIssue().get();
+        }
+
+        try (IssueCache.Lock ignored = issueCache.lock(issueKey, deadline)) {
+            // Another hook process may have fetched the issue while waiting for the lock. If the wait timed out,
+            // the issue is fetched as any other cache miss
+            lookup = issueCache.lookup(issueKey, fetchPlan.getFields());
+            if (lookup.getIssue().isPresent()) {
+                return lookup.getIssue().get();
+            }
 
-        String issueKey = null;
+            JiraIssue jiraIssue = fetchJiraIssue(issueKey, issueLinks,
+                    fetchPlan.restrictTo(lookup.getMissingFields()), deadline);
+            if (jiraIssue == null) {
+                return null;
+            }
+            return issueCache.store(lookup, jiraIssue);
 
-        if (jiraIssueKey.isPresent()) {
-            issueKey = jiraIssueKey.get();
+        } catch (IssueKeyNotFoundException e) {
+            if (e.getStatusCode().isPresent()) {
+                // The issue doesn't exist or can't be accessed
+                issueCache.storeFailure(issueKey, e);
+            }
+            throw e;
         }
-        return mapJiraIssue(fetchBasicJiraIssue(issueKey), issueLinks);
+    }
+
+    /**
+     * Fetches the populated JIRA issues for the given issue keys. The issues are fetched concurrently, but never
+     * more than the given number at the same time.
+     * @param jiraIssueKeys the given jira issue ids
+     * @param issueLinks a list containing all names of JIRA issue link names
+     * @param fetchPlan the fields which are needed by the enabled checks and commit message sections
+     * @param parallelism the maximum number of issues which are fetched at the same time
+     * @param session the session the commit is part of, during which cached issues are used for longer
+     * @param deadline the deadline of the communication with JIRA
+     * @return the JIRA issues in the order of the keys. Empty if the connection to JIRA isn't configured.
+     * @throws IssueKeyNotFoundException in case of problems with any of the issues
+     * @throws JiraUnavailableException if JIRA didn't return any of the issues, e.g due to a server error
+     */
+    @Override
+    public List<JiraIssue> getJiraPopulatedIssues(List<String> jiraIssueKeys, List<String> issueLinks,
+                                                  FetchPlan fetchPlan, int parallelism,
+                                                  Optional<HookSession> session, Deadline deadline)
+            throws IssueKeyNotFoundException {
+        List<JiraIssue> jiraIssues = Lists.newArrayListWithCapacity(jiraIssueKeys.size());
+
+        if (issueSource == null) {
+            return jiraIssues;
+        }
+
+        // The git configuration is read on this thread, and not by the threads fetching the issues
+        IssueCache issueCache = getIssueCache(issueLinks, session);
+        if (jiraIssueKeys.size() <= 1 || parallelism <= 1) {
+            for (String jiraIssueKey : jiraIssueKeys) {
+                jiraIssues.add(requireResolved(jiraIssueKey, getJiraPopulatedIssue(jiraIssueKey, issueLinks,
+                        fetchPlan, issueCache, deadline)));
+            }
+            return jiraIssues;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jiraIssueKeys.size(), parallelism),
+                new ThreadFactoryBuilder().setNameFormat("jira-fetch-%d").setDaemon(true).build());
+        try {
+            List<Future<JiraIssue>> futures = Lists.newArrayListWithCapacity(jiraIssueKeys.size());
+            for (String jiraIssueKey : jiraIssueKeys) {
+                futures.add(executor.submit(() -> getJiraPopulatedIssue(jiraIssueKey, issueLinks, fetchPlan,
+                        issueCache, deadline)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                jiraIssues.add(requireResolved(jiraIssueKeys.get(i),
+                        futures.get(i).get(deadline.getRemainingMillis(), TimeUnit.MILLISECONDS)));
+            }
+        } catch (TimeoutException e) {
+            throw new JiraTimeoutException(getTimeoutMessage(deadline));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IssueKeyNotFoundException) {
+                throw (IssueKeyNotFoundException) e.getCause();
+            }
+            throw new IssueKeyNotFoundException(e.getCause().getLocalizedMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IssueKeyNotFoundException(e.getLocalizedMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        return jiraIssues;
+    }
+
+    /**
+     * Fetches the JIRA issues for the given issue keys into the issue cache, with as few searches as possible
+     * instead of one request per issue. Issues which are cached already aren't fetched again, and issues which
+     * aren't found are simply left out.
+     * @param jiraIssueKeys the given jira issue ids
+     * @param issueLinks a list containing all names of JIRA issue link names
+     * @param fetchPlan the fields which are needed by the enabled checks and commit message sections
+     * @param session the session the issues are fetched for, during which cached issues are used for longer
+     * @param deadline the deadline of the communication with JIRA
+     * @return the number of issues fetched
+     * @throws IssueKeyNotFoundException if JIRA can't be searched
+     */
+    @Override
+    public int prefetchJiraIssues(Collection<String> jiraIssueKeys, List<String> issueLinks, FetchPlan fetchPlan,
+                                  Optional<HookSession> session, Deadline deadline)
+            throws IssueKeyNotFoundException {
+        if (issueSource == null || jiraIssueKeys.isEmpty()) {
+            return 0;
+        }
+
+        IssueCache issueCache = getIssueCache(issueLinks, session);
+        Map<String, IssueCache.Lookup> lookups = Maps.newLinkedHashMap();
+        Set<String> missingFields = Sets.newTreeSet();
+
+        for (String jiraIssueKey : jiraIssueKeys) {
+            try {
+                IssueCache.Lookup lookup = issueCache.lookup(jiraIssueKey, fetchPlan.getFields());
+                if (!lookup.getIssue().isPresent()) {
+                    lookups.put(jiraIssueKey.toUpperCase(Locale.ROOT), lookup);
+                    missingFields.addAll(lookup.getMissingFields());
+                }
+            } catch (IssueKeyNotFoundException e) {
+                // The issue was recently found to be missing
+            }
+        }
+
+        if (lookups.isEmpty()) {
+            return 0;
+        }
+
+        logger.debug("Prefetching {} issues", lookups.size());
+        List<JiraIssue> jiraIssues = Lists.newArrayList();
+        for (JSONObject issue : searchIssues(lookups.keySet(), fetchPlan.restrictTo(missingFields), deadline)) {
+            addIfPresent(jiraIssues, mapJiraIssue(issue.toString(), issueLinks));
+        }
+        fetchMissingSummaries(jiraIssues, deadline);
+
+        for (JiraIssue jiraIssue : jiraIssues) {
+            IssueCache.Lookup lookup = lookups.get(jiraIssue.getKey().toUpperCase(Locale.ROOT));
+            if (lookup != null) {
+                issueCache.store(lookup, jiraIssue);
+            }
+        }
+        return jiraIssues.size();
+    }
+
+    private IssueCache getIssueCache(List<String> issueLinks, Optional<HookSession> session) {
+        return new IssueCache(Joiner.on('|').join(cacheIdentity, issueLinks),
+                session.map(HookSession::getCacheTimeToLive).orElse(0L));
+    }
+
+    /**
+     * Makes sure an issue which was asked for is checked. JIRA may fail without saying why (e.g with a server
+     * error), and such an issue must not be left out of the checks of the commit.
+     */
+    private JiraIssue requireResolved(String jiraIssueKey, JiraIssue jiraIssue) throws JiraUnavailableException {
+        if (jiraIssue == null) {
+            throw new JiraUnavailableException(messages.getString("error.jira.unresolved") + jiraIssueKey);
+        }
+        return jiraIssue;
+    }
+
+    private static void addIfPresent(List<JiraIssue> jiraIssues, JiraIssue jiraIssue) {
+        if (jiraIssue != null) {
+            jiraIssues.add(jiraIssue);
+        }
+    }
+
+    private JiraIssue fetchJiraIssue(String issueKey, List<String> issueLinks, FetchPlan fetchPlan,
+                                     Deadline deadline) throws IssueKeyNotFoundException {
+        JiraIssue jiraIssue = mapJiraIssue(fetchBasicJiraIssue(issueKey, fetchPlan, deadline), issueLinks);
+        if (jiraIssue != null) {
+            fetchMissingSummaries(Collections.singletonList(jiraIssue), deadline);
+        }
+        return jiraIssue;
     }
 
     private String getDecodedPassword(String jiraEncodedPassword) {
@@ -103,124 +384,289 @@ class JiraConnector {
         return jiraAddressUri;
     }
 
-    private JiraIssue mapJiraIssue(JiraIssueHolder issueHolder, List<String> issueLinks)
+    private JiraIssue mapJiraIssue(String issueJson, List<String> issueLinks) throws IssueKeyNotFoundException {
+        if (issueJson == null) {
+            return null;
+        }
+
+        try {
+            return IssueJsonReader.read(issueJson, issueLinks);
+        } catch (IllegalArgumentException e) {
+            throw new IssueKeyNotFoundException("JSONException", e);
+        }
+    }
+
+    private String fetchBasicJiraIssue(String jiraIssueKey, FetchPlan fetchPlan, Deadline deadline)
             throws IssueKeyNotFoundException {
-        Issue issue = issueHolder.getIssue();
-        JiraIssue jiraIssue = new JiraIssue(issueHolder.getJiraIssue().getKey(),
-                issueHolder.getJiraIssue().getSummary());
+        if (issueSource != null && !Strings.isNullOrEmpty(jiraIssueKey)) {
+            // Only the planned fields are requested, and nothing is expanded
+            logger.debug("Fetching {} with {}", jiraIssueKey, fetchPlan);
+            return getBody(ISSUE_RESOURCE + jiraIssueKey + "?" + fetchPlan.toQueryParameters(), jiraIssueKey,
+                    deadline);
+        }
+        return null;
+    }
 
-        if (issue != null) {
+    /**
+     * Fills in the summary of the parent issues and related issues which weren't part of the fetched issues.
+     * All missing summaries are fetched with as few searches as possible, instead of one request per issue.
+     * @param jiraIssues the mapped JIRA issues
+     * @param deadline the deadline of the communication with JIRA
+     */
+    private void fetchMissingSummaries(List<JiraIssue> jiraIssues, Deadline deadline)
+            throws IssueKeyNotFoundException {
+        if (issueSource == null) {
+            return;
+        }
 
-            if (issue.getAssignee() != null) {
-                User assignee = new User(issue.getAssignee().getName(), issue.getAssignee().getDisplayName());
-                jiraIssue.setAssignee(Optional.of(assignee));
+        Set<String> missingKeys = Sets.newLinkedHashSet();
+        for (JiraIssue jiraIssue : jiraIssues) {
+            if (jiraIssue.getParentIssue() != null && jiraIssue.getParentIssue().isPresent()
+                    && jiraIssue.getParentIssue().get().getSummary() == null) {
+                missingKeys.add(jiraIssue.getParentIssue().get().getKey());
             }
-
-            if (issue.getStatus() != null) {
-                jiraIssue.setStatus(issue.getStatus().getName());
+            if (jiraIssue.getRelatedIssues() != null) {
+                for (BasicJiraIssue relatedIssue : jiraIssue.getRelatedIssues()) {
+                    if (relatedIssue.getSummary() == null) {
+                        missingKeys.add(relatedIssue.getKey());
+                    }
+                }
             }
+        }
 
-            if (issue.getIssueType() != null) {
-                jiraIssue.setSubtask(issue.getIssueType().isSubtask());
-                jiraIssue.setIssueTypeName(issue.getIssueType().getName());
-            }
+        if (missingKeys.isEmpty()) {
+            return;
+        }
 
-            if (issue.getResolution() != null) {
-                jiraIssue.setResolution(Optional.of(issue.getResolution().getDescription()));
-            }
+        Map<String, String> summaries = searchSummaries(missingKeys, deadline);
 
-            // parent issue
-            IssueField parentIssueField = issue.getField("parent");
-            if (parentIssueField != null) {
-                BasicJiraIssue basicJiraIssue = getParentIssueInfo(parentIssueField);
-                jiraIssue.setParentIssue(Optional.of(basicJiraIssue));
+        for (JiraIssue jiraIssue : jiraIssues) {
+            if (jiraIssue.getParentIssue() != null && jiraIssue.getParentIssue().isPresent()) {
+                jiraIssue.setParentIssue(Optional.of(withSummary(jiraIssue.getParentIssue().get(), summaries)));
             }
-
-            // related issues
-            if (issue.getIssueLinks() != null) {
-                List<BasicJiraIssue> relatedJiraIssues = getRelatedIssues(issue, issueLinks);
+            if (jiraIssue.getRelatedIssues() != null) {
+                List<BasicJiraIssue> relatedJiraIssues = Lists.newArrayList();
+                for (BasicJiraIssue relatedIssue : jiraIssue.getRelatedIssues()) {
+                    relatedJiraIssues.add(withSummary(relatedIssue, summaries));
+                }
                 jiraIssue.setRelatedIssues(relatedJiraIssues);
             }
         }
+    }
 
-        return  jiraIssue;
+    private BasicJiraIssue withSummary(BasicJiraIssue basicJiraIssue, Map<String, String> summaries) {
+        if (basicJiraIssue.getSummary() != null) {
+            return basicJiraIssue;
+        }
+        // Issues which aren't found (e.g due to missing permissions) are listed without a summary
+        return new BasicJiraIssue(basicJiraIssue.getKey(),
+                Strings.nullToEmpty(summaries.get(basicJiraIssue.getKey())));
     }
 
-    private List<BasicJiraIssue> getRelatedIssues(Issue issue, List<String> issuesLinkList) {
-        Iterator<IssueLink> issueLinkIterator;
-        if (issue.getIssueLinks() != null ) {
-            issueLinkIterator = issue.getIssueLinks().iterator();
-            List<BasicJiraIssue> relatedJiraIssues = Lists.newArrayList();
+    /**
+     * Searches for the summaries of the given issues. The keys are split into as few JQL queries as the
+     * maximum query length allows, and each query is paged.
+     * @param issueKeys the issue keys
+     * @param deadline the deadline of the communication with JIRA
+     * @return the summary of every issue found, by issue key
+     */
+    private Map<String, String> searchSummaries(Collection<String> issueKeys, Deadline deadline)
+            throws IssueKeyNotFoundException {
+        Map<String, String> summaries = Maps.newHashMap();
 
-            JiraIssueHolder relatedIssueHolder;
+        for (JSONObject issue : searchIssues(issueKeys, FetchPlan.of(
+                EnumSet.of(FetchPlan.Requirement.SUMMARY_SECTION)), deadline)) {
+            BasicJiraIssue basicIssue = getBasicIssueInfo(issue);
+            if (basicIssue.getSummary() != null) {
+                summaries.put(basicIssue.getKey(), basicIssue.getSummary());
+            }
+        }
+        return summaries;
+    }
 
-            while (issueLinkIterator.hasNext()) {
-                IssueLink issueLink = issueLinkIterator.next();
-                for (String issueLinkTypeName : issuesLinkList) {
-                    if (issueLink.getIssueLinkType().getName().equalsIgnoreCase(issueLinkTypeName)) {
-                        String relatedIssueKey = issueLink.getTargetIssueKey();
-                        relatedIssueHolder = fetchBasicJiraIssue(relatedIssueKey);
-                        relatedJiraIssues.add(relatedIssueHolder.getJiraIssue());
+    /**
+     * Searches for the given issues. The keys are split into as few JQL queries as the maximum query length
+     * allows, and each query is paged. Issues which don't exist or can't be accessed aren't returned.
+     * @param issueKeys the issue keys
+     * @param fetchPlan the fields which are returned
+     * @param deadline the deadline of the communication with JIRA
+     * @return the issues found, as returned by JIRA
+     */
+    private List<JSONObject> searchIssues(Collection<String> issueKeys, FetchPlan fetchPlan, Deadline deadline)
+            throws IssueKeyNotFoundException {
+        List<JSONObject> foundIssues = Lists.newArrayList();
+
+        for (String jql : getKeyQueries(issueKeys)) {
+            int startAt = 0;
+
+            while (true) {
+                String searchResource = SEARCH_RESOURCE + "?jql=" + encode(jql) + "&"
+                        + fetchPlan.toQueryParameters() + "&validateQuery=false&startAt=" + startAt
+                        + "&maxResults=" + SEARCH_PAGE_SIZE;
+
+                JSONObject result = getJson(searchResource, jql, deadline);
+                JSONArray issues = result != null ? result.optJSONArray("issues") : null;
+                if (issues == null || issues.length() == 0) {
+                    break;
+                }
+
+                for (int i = 0; i < issues.length(); i++) {
+                    if (issues.optJSONObject(i) != null) {
+                        foundIssues.add(issues.optJSONObject(i));
                     }
                 }
+
+                startAt += issues.length();
+                if (startAt >= result.optInt("total")) {
+                    break;
+                }
             }
-            return relatedJiraIssues;
         }
-        return Lists.newArrayList();
+        return foundIssues;
     }
 
-    private JiraIssueHolder fetchBasicJiraIssue(String jiraIssueKey) throws IssueKeyNotFoundException {
-        JiraIssueHolder holder = null;
+    /**
+     * Creates the JQL queries (key in (A-1, A-2, ...)) for the given issue keys, none of them longer than
+     * the maximum query length when URL encoded.
+     * @param issueKeys the issue keys
+     * @return the queries
+     */
+    static List<String> getKeyQueries(Collection<String> issueKeys) {
+        int emptyQueryLength = encode(KEY_QUERY_PREFIX).length() + encode(KEY_QUERY_SUFFIX).length();
+        int separatorLength = encode(KEY_QUERY_SEPARATOR).length();
+        List<String> queries = Lists.newArrayList();
+        List<String> batch = Lists.newArrayList();
+        int batchLength = emptyQueryLength;
+
+        for (String issueKey : issueKeys) {
+            int issueKeyLength = encode(issueKey).length();
+            if (!batch.isEmpty() && batchLength + separatorLength + issueKeyLength > MAX_ENCODED_JQL_LENGTH) {
+                queries.add(toKeyQuery(batch));
+                batch.clear();
+                batchLength = emptyQueryLength;
+            }
+            batchLength += (batch.isEmpty() ? 0 : separatorLength) + issueKeyLength;
+            batch.add(issueKey);
+        }
+
+        if (!batch.isEmpty()) {
+            queries.add(toKeyQuery(batch));
+        }
+        return queries;
+    }
+
+    private static String toKeyQuery(List<String> issueKeys) {
+        return KEY_QUERY_PREFIX + Joiner.on(KEY_QUERY_SEPARATOR).join(issueKeys) + KEY_QUERY_SUFFIX;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends a GET request to the given JIRA resource.
+     * @param resource the resource, relative to the JIRA address
+     * @param subject what is requested, e.g the issue key. Used in error messages.
+     * @return the returned JSON object or null if JIRA returns an unexpected status code
+     * @throws IssueKeyNotFoundException if access is denied, the resource doesn't exist or JIRA can't be reached
+     */
+    private JSONObject getJson(String resource, String subject, Deadline deadline)
+            throws IssueKeyNotFoundException {
+        String body = getBody(resource, subject, deadline);
+        try {
+            return body != null ? new JSONObject(body) : null;
+        } catch (JSONException e) {
+            throw new IssueKeyNotFoundException("JSONException", e);
+        }
+    }
 
-        if (issueRestClient != null && !Strings.isNullOrEmpty(jiraIssueKey)) {
+    private String getBody(String resource, String subject, Deadline deadline) throws IssueKeyNotFoundException {
+        if (deadline.isExpired()) {
+            // The earlier requests of the commit used up the time. That isn't a failure of JIRA itself.
+            throw new JiraTimeoutException(getTimeoutMessage(deadline));
+        }
+        if (!circuitBreaker.allowRequest()) {
+            // JIRA has been down for the latest requests, so the commit doesn't wait for it again
+            throw new JiraUnavailableException(messages.getString("error.jira.unavailable")
+                    + TimeUnit.MILLISECONDS.toSeconds(circuitBreaker.getRemainingCoolDown()) + " s");
+        }
+
+        try {
+            IssueSource.Response response;
             try {
-                Promise<Issue> issuePromise = issueRestClient.getIssue(jiraIssueKey);
-                Issue issue = issuePromise.claim();
+                response = issueSource.get(resource, deadline);
+            } catch (IOException e) {
+                circuitBreaker.recordFailure();
+                throw e;
+            }
 
-                BasicJiraIssue basicJiraIssue = new BasicJiraIssue(issue.getKey(), issue.getSummary());
-                holder = new JiraIssueHolder(basicJiraIssue, issue);
+            int statusCode = response.getStatusCode();
+            if (statusCode >= 500) {
+                // JIRA, or a proxy in front of it, is unavailable
+                circuitBreaker.recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+            }
 
-            } catch (RestClientException e) {
-                if (e.getStatusCode().isPresent() && e.getStatusCode().get() == 401) {
-                    // Forbidden access
-                    throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.401"));
-                }
-                if (e.getStatusCode().isPresent() && e.getStatusCode().get() == 403) {
-                    // Forbidden access
-                    throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.403"));
-                }
-                if (e.getStatusCode().isPresent() && e.getStatusCode().get() == 404) {
-                    // The issue doesn't exist
-                    throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.404")
-                            + jiraIssueKey);
-                }
-                else {
-                    logger.error("Got unhandled RestClientException\n\t", e);
-                }
-            } catch (Exception e) {
-                if (e.getCause() instanceof ConnectException) {
-                    throw new IssueKeyNotFoundException(messages.getString("error.jira.connection.refused"));
-                } else {
-                    logger.error("Got unhandled Exception\n\t", e);
-                }
+            if (statusCode == 401) {
+                // Forbidden access
+                throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.401"), statusCode);
+            }
+            if (statusCode == 403) {
+                // Forbidden access
+                throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.403"), statusCode);
+            }
+            if (statusCode == 404) {
+                // The issue doesn't exist
+                throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.404")
+                        + subject, statusCode);
+            }
+            if (statusCode < 200 || statusCode >= 300) {
+                logger.error("Got unhandled status code {} from JIRA", statusCode);
+                return null;
+            }
+            return response.getBody();
+
+        } catch (IssueKeyNotFoundException e) {
+            throw e;
+        } catch (SocketTimeoutException e) {
+            throw new JiraTimeoutException(getTimeoutMessage(deadline), e);
+        } catch (Exception e) {
+            if (e instanceof ConnectException || e.getCause() instanceof ConnectException) {
+                throw new JiraUnavailableException(messages.getString("error.jira.connection.refused"));
+            } else {
+                logger.error("Got unhandled Exception\n\t", e);
             }
         }
-        return holder;
+        return null;
     }
 
-    private BasicJiraIssue getParentIssueInfo(IssueField parentIssueField) throws IssueKeyNotFoundException {
-        BasicJiraIssue basicJiraIssue;
-        JSONObject jsonObject = (JSONObject) parentIssueField.getValue();
+    private String getTimeoutMessage(Deadline deadline) {
+        return messages.getString("error.jira.timeout") + deadline.getBudgetMillis() + " ms";
+    }
+
+    private BasicJiraIssue getBasicIssueInfo(JSONObject jsonObject) throws IssueKeyNotFoundException {
         try {
-            String parentKey = jsonObject.getString("key");
-            JSONObject parentFields = (JSONObject) jsonObject.get("fields");
-            String parentSummary = parentFields.getString("summary");
-            basicJiraIssue = new BasicJiraIssue(parentKey, parentSummary);
+            String key = jsonObject.getString("key");
+            // Linked issues normally include their summary, but it may be left out
+            JSONObject fields = jsonObject.optJSONObject("fields");
+            String summary = fields != null ? getString(fields, "summary") : null;
+            return new BasicJiraIssue(key, summary);
 
         } catch (JSONException e) {
             throw new IssueKeyNotFoundException("JSONException", e);
         }
-        return basicJiraIssue;
+    }
+
+    private static String getString(JSONObject jsonObject, String key) {
+        if (jsonObject.isNull(key)) {
+            return null;
+        }
+        return jsonObject.optString(key);
     }
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.atlassian.jira.rest.client.auth.BasicHttpAuthenticationHandler;
+import com.atlassian.jira.rest.client.internal.async.AsynchronousHttpClientFactory;
+import com.atlassian.jira.rest.client.internal.async.DisposableHttpClient;
+import com.google.common.base.CharMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class is responsible for getting resources of the JIRA REST API with the HTTP client of the JIRA REST
+ * Java client. It's used when githook.jira.transport is set to jrjc.
+ */
+class JrjcIssueSource implements IssueSource {
+    private final Logger logger = LoggerFactory.getLogger(JrjcIssueSource.class);
+    private final String jiraAddress;
+    private final DisposableHttpClient httpClient;
+
+    JrjcIssueSource(URI jiraAddressUri, String username, String password) {
+        jiraAddress = CharMatcher.is('/').trimTrailingFrom(jiraAddressUri.toString());
+        httpClient = new AsynchronousHttpClientFactory().createClient(jiraAddressUri,
+                new BasicHttpAuthenticationHandler(username, password));
+    }
+
+    @Override
+    public Response get(String resource, Deadline deadline) throws IOException {
+        Future<com.atlassian.httpclient.api.Response> responsePromise = null;
+        try {
+            responsePromise = httpClient.newRequest(URI.create(jiraAddress + resource))
+                    .setAccept("application/json").get();
+            com.atlassian.httpclient.api.Response response = responsePromise.get(deadline.getRemainingMillis(),
+                    TimeUnit.MILLISECONDS);
+            return new Response(response.getStatusCode(), response.getEntity());
+
+        } catch (TimeoutException e) {
+            responsePromise.cancel(true);
+            throw new SocketTimeoutException("No response from JIRA within " + deadline.getBudgetMillis() + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.destroy();
+        } catch (Exception e) {
+            logger.debug("Couldn't close the connection to JIRA", e);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+/**
+ * This class is responsible for reading a JSON document one value at a time, without building a tree of it.
+ * Names are matched against the expected names in place (see {@link #selectName(String...)}), and values which
+ * aren't needed are skipped without being decoded, so only the strings which are asked for are allocated.
+ * Malformed documents give an {@link IllegalArgumentException}.
+ */
+final class JsonPullParser {
+
+    /**
+     * The kinds of JSON values.
+     */
+    enum Token {
+        OBJECT,
+        ARRAY,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL
+    }
+
+    private final String json;
+    private int position;
+
+    JsonPullParser(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Gets the kind of the next value without reading it.
+     * @return the kind of value
+     */
+    Token peek() {
+        skipWhitespace();
+        switch (current()) {
+            case '{':
+                return Token.OBJECT;
+            case '[':
+                return Token.ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                return Token.NUMBER;
+        }
+    }
+
+    void beginObject() {
+        expect('{');
+    }
+
+    void endObject() {
+        expect('}');
+    }
+
+    void beginArray() {
+        expect('[');
+    }
+
+    void endArray() {
+        expect(']');
+    }
+
+    /**
+     * Checks if the current object or array has more members, and moves past the comma separating them.
+     * @return true if there are more members
+     */
+    boolean hasNext() {
+        skipWhitespace();
+        char c = current();
+        if (c == ',') {
+            position++;
+            return true;
+        }
+        return c != '}' && c != ']';
+    }
+
+    /**
+     * Reads the name of the next member of the current object, and moves to its value.
+     * @param names the expected names
+     * @return the index of the name among the expected names, or -1 if it isn't expected
+     */
+    int selectName(String... names) {
+        skipWhitespace();
+        expect('"');
+        int start = position;
+        boolean escaped = skipStringContents();
+        int length = position - start - 1;
+        expect(':');
+
+        if (!escaped) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].length() == length && json.regionMatches(start, names[i], 0, length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Escaped names are rare enough to be decoded
+        position = start - 1;
+        String name = readString();
+        expect(':');
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the next value as a string. Numbers and booleans are read as they're written.
+     * @return the value, or null if it's null
+     * @throws IllegalArgumentException if the value is an object or array
+     */
+    String nextString() {
+        switch (peek()) {
+            case STRING:
+                return readString();
+            case NULL:
+                skipValue();
+                return null;
+            case OBJECT:
+            case ARRAY:
+                throw malformed("Expected a string");
+            default:
+                int start = position;
+                skipValue();
+                return json.substring(start, position);
+        }
+    }
+
+    /**
+     * Reads the next value as a boolean. Strings are true if they're "true" ignoring case, and null is false.
+     * @return the value
+     */
+    boolean nextBoolean() {
+        return Boolean.parseBoolean(nextString());
+    }
+
+    /**
+     * Skips the next value, including all values it contains.
+     */
+    void skipValue() {
+        Token token = peek();
+        if (token == Token.STRING) {
+            position++;
+            skipStringContents();
+            return;
+        }
+
+        if (token != Token.OBJECT && token != Token.ARRAY) {
+            while (position < json.length() && "{}[],:\" \t\r\n".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            return;
+        }
+
+        int depth = 0;
+        do {
+            char c = current();
+            position++;
+            if (c == '"') {
+                skipStringContents();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder value = null;
+        int start = position;
+
+        while (true) {
+            char c = current();
+            if (c == '"') {
+                String text = json.substring(start, position);
+                position++;
+                return value != null ? value.append(text).toString() : text;
+            }
+
+            if (c != '\\') {
+                position++;
+                continue;
+            }
+
+            if (value == null) {
+                value = new StringBuilder();
+            }
+            value.append(json, start, position);
+            position++;
+            value.append(readEscaped());
+            start = position;
+        }
+    }
+
+    private char readEscaped() {
+        char c = current();
+        position++;
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > json.length()) {
+                    throw malformed("Truncated unicode escape");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+                    position += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw malformed("Malformed unicode escape");
+                }
+            default:
+                // \" \\ and \/
+                return c;
+        }
+    }
+
+    /**
+     * Moves past the closing quote of the string at the current position.
+     * @return true if the string contains escapes
+     */
+    private boolean skipStringContents() {
+        boolean escaped = false;
+        while (true) {
+            char c = current();
+            position++;
+            if (c == '"') {
+                return escaped;
+            }
+            if (c == '\\') {
+                escaped = true;
+                current();
+                position++;
+            }
+        }
+    }
+
+    private void expect(char expected) {
+        skipWhitespace();
+        if (current() != expected) {
+            throw malformed("Expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    private char current() {
+        if (position >= json.length()) {
+            throw malformed("Unexpected end of JSON");
+        }
+        return json.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && json.charAt(position) <= ' ') {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException malformed(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * This class is responsible for keeping track of how long the latest successful requests to a JIRA instance took.
+ * The latencies are kept in the cache directory, since a single commit makes too few requests to learn from. Every
+ * JIRA instance has its own latencies, since repositories of the same user may use JIRA instances far apart.
+ */
+class LatencyTracker {
+    private static final Logger logger = LoggerFactory.getLogger(LatencyTracker.class);
+    private static final String LATENCY_DIRECTORY = "latencies";
+    private static final int MAX_SAMPLES = 50;
+    // Percentiles of fewer samples than this are too uncertain to be used
+    private static final int MIN_SAMPLES = 10;
+
+    private final File file;
+    private final Deque<Long> samples = new ArrayDeque<>();
+
+    /**
+     * Creates the latency tracker of a JIRA instance.
+     * @param identity the identity of the JIRA instance, e.g its address
+     */
+    LatencyTracker(String identity) {
+        this(new File(new File(CacheDirectory.get(), LATENCY_DIRECTORY),
+                Hashing.sha256().hashString(identity, Charsets.UTF_8).toString().substring(0, 16)));
+    }
+
+    LatencyTracker(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Records the latency of a successful request.
+     * @param latencyMillis the latency in milliseconds
+     */
+    synchronized void record(long latencyMillis) {
+        samples.addLast(latencyMillis);
+        if (samples.size() > MAX_SAMPLES) {
+            samples.removeFirst();
+        }
+
+        try {
+            CacheDirectory.writePrivateFile(file, Joiner.on('\n').join(samples).getBytes(Charsets.UTF_8));
+        } catch (IOException e) {
+            logger.debug("Unable to save the latencies to {}", file, e);
+        }
+    }
+
+    /**
+     * Gets a percentile of the recorded latencies.
+     * @param percentile the percentile, e.g 95
+     * @return the latency in milliseconds, or -1 if too few latencies are recorded
+     */
+    synchronized long getPercentile(int percentile) {
+        if (samples.size() < MIN_SAMPLES) {
+            return -1;
+        }
+
+        long[] sorted = new long[samples.size()];
+        int i = 0;
+        for (long sample : samples) {
+            sorted[i++] = sample;
+        }
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try {
+            for (String sample : Splitter.on('\n').omitEmptyStrings().trimResults()
+                    .split(Files.asCharSource(file, Charsets.UTF_8).read())) {
+                samples.addLast(Long.parseLong(sample));
+            }
+            while (samples.size() > MAX_SAMPLES) {
+                samples.removeFirst();
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Ignoring the unreadable latencies in {}", file);
+            samples.clear();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class is responsible for remembering which issues were prefetched while the commit message was written
+ * (by prepare-commit-msg), and for counting how often the prefetch paid off. The prefetch paid off when every
+ * issue of the commit was fetched in time, and recently enough for the commit to find it in the issue cache.
+ * A record is used by a single commit.
+ */
+final class PrefetchRecord {
+    private static final Logger logger = LoggerFactory.getLogger(PrefetchRecord.class);
+    private static final String PREFETCH_DIRECTORY = "prefetch";
+    private static final String STATISTICS_FILE_NAME = "statistics";
+
+    private final File file;
+    private final File statisticsFile;
+    private long paidOffCount;
+    private long commitCount;
+
+    PrefetchRecord(File directory, String gitDirectory) {
+        file = new File(directory, Hashing.sha256().hashString(gitDirectory, Charsets.UTF_8).toString()
+                .substring(0, 16));
+        statisticsFile = new File(directory, STATISTICS_FILE_NAME);
+    }
+
+    /**
+     * Gets the record of the given repository or worktree.
+     * @param gitDirectory the git directory, i.e the directory of the commit message file
+     * @return the record
+     */
+    static PrefetchRecord forGitDirectory(File gitDirectory) {
+        return new PrefetchRecord(new File(CacheDirectory.get(), PREFETCH_DIRECTORY),
+                gitDirectory.getAbsolutePath());
+    }
+
+    /**
+     * Records that the given issues were prefetched.
+     * @param issueKeys the keys of the prefetched issues
+     */
+    void write(Collection<String> issueKeys) {
+        String contents = System.currentTimeMillis() + "\n" + Joiner.on(' ').join(issueKeys) + "\n";
+        try {
+            CacheDirectory.writePrivateFile(file, contents.getBytes(Charsets.UTF_8));
+        } catch (IOException e) {
+            logger.debug("Unable to record the prefetch in {}", file);
+        }
+    }
+
+    /**
+     * Uses the record for a commit, and counts whether the prefetch paid off.
+     * @param issueKeys the keys of the issues of the commit
+     * @param timeToLiveMillis how long prefetched issues are found in the issue cache
+     * @return true if every issue of the commit was prefetched within the time to live
+     */
+    boolean use(Collection<String> issueKeys, long timeToLiveMillis) {
+        boolean paidOff = false;
+
+        try {
+            if (file.isFile()) {
+                List<String> lines = Files.readLines(file, Charsets.UTF_8);
+                long age = System.currentTimeMillis() - Long.parseLong(lines.get(0).trim());
+                paidOff = age >= 0 && age < timeToLiveMillis && lines.size() > 1
+                        && ImmutableSet.copyOf(Splitter.on(' ').omitEmptyStrings().split(lines.get(1)))
+                        .containsAll(issueKeys);
+                if (!file.delete()) {
+                    logger.debug("Unable to remove the prefetch record {}", file);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to read the prefetch record {}", file);
+        }
+
+        updateStatistics(paidOff);
+        return paidOff;
+    }
+
+    private void updateStatistics(boolean paidOff) {
+        try {
+            if (statisticsFile.isFile()) {
+                List<String> counts = Splitter.on(' ').omitEmptyStrings().splitToList(
+                        Files.asCharSource(statisticsFile, Charsets.UTF_8).read().trim());
+                paidOffCount = Long.parseLong(counts.get(0));
+                commitCount = Long.parseLong(counts.get(1));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to read the prefetch statistics {}", statisticsFile);
+        }
+
+        commitCount++;
+        if (paidOff) {
+            paidOffCount++;
+        }
+
+        try {
+            CacheDirectory.writePrivateFile(statisticsFile,
+                    (paidOffCount + " " + commitCount + "\n").getBytes(Charsets.UTF_8));
+        } catch (IOException e) {
+            logger.debug("Unable to write the prefetch statistics {}", statisticsFile);
+        }
+    }
+
+    /**
+     * Gets the number of commits for which the prefetch paid off, including the last commit which used a record.
+     * @return the number of commits
+     */
+    long getPaidOffCount() {
+        return paidOffCount;
+    }
+
+    /**
+     * Gets the number of commits counted, including the last commit which used a record.
+     * @return the number of commits
+     */
+    long getCommitCount() {
+        return commitCount;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("File", file).
+                add("Paid off", paidOffCount).
+                add("Commits", commitCount).
+                toString();
+    }
+}
@@ -7,20 +7,41 @@
  */
 package org.karivar.utils;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.ResourceBundle;
 
+/**
+ * This class is responsible for reading the property files of the hook. The result is kept in a
+ * {@link SnapshotCache} until the file (or jar file) containing the properties changes.
+ */
 class PropertyReader {
+    private static final String ISSUE_TYPES_FILENAME = "issuetypes.properties";
+    private static final String ISSUE_LINKS_FILENAME = "issuelinks.properties";
+    private static final String SNAPSHOT_NAME = "properties";
+    private static final String ISSUE_TYPE_PREFIX = "issuetype:";
+    private static final String ISSUE_LINK_KEY = "issuelink";
+
+    private static ImmutableListMultimap<String, String> snapshot;
+    private static SnapshotWatcher snapshotWatcher;
 
     private final ResourceBundle messages;
     private Map<String, List<String>> issueTypesAndStatuses;
@@ -37,7 +58,14 @@ class PropertyReader {
      * @return a map containing issue types and their statuses.
      */
     Map<String, List<String>> getIssueTypesAndStatuses() {
-        loadIssueTypesAndStatuses();
+        issueTypesAndStatuses = Maps.newHashMap();
+
+        for (Map.Entry<String, List<String>> entry : Multimaps.asMap(getSnapshot()).entrySet()) {
+            if (entry.getKey().startsWith(ISSUE_TYPE_PREFIX)) {
+                issueTypesAndStatuses.put(entry.getKey().substring(ISSUE_TYPE_PREFIX.length()),
+                        Lists.newArrayList(entry.getValue()));
+            }
+        }
         return issueTypesAndStatuses;
     }
 
@@ -47,15 +75,108 @@ class PropertyReader {
      * @return a list containing all JIRA link names.
      */
     List<String> getIssueLinks() {
-        loadIssueLinks();
+        issueLinks = Lists.newArrayList(getSnapshot().get(ISSUE_LINK_KEY));
         return issueLinks;
     }
 
+    /**
+     * Keeps the properties in memory until the watcher reports that the file containing them has changed.
+     * Used by long-running modes of the hook.
+     * @param watcher the watcher
+     */
+    static synchronized void watchForChanges(SnapshotWatcher watcher) {
+        snapshotWatcher = watcher;
+    }
+
+    private ImmutableListMultimap<String, String> getSnapshot() {
+        synchronized (PropertyReader.class) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
+        List<File> sources = getSources();
+        SnapshotCache cache = null;
+        ImmutableListMultimap<String, String> entries = null;
+
+        if (!sources.isEmpty()) {
+            cache = new SnapshotCache(SNAPSHOT_NAME, Joiner.on('|').join(sources));
+            Optional<ImmutableListMultimap<String, String>> cachedEntries = cache.load();
+            if (cachedEntries.isPresent()) {
+                entries = cachedEntries.get();
+            }
+        }
+
+        if (entries == null) {
+            entries = ImmutableListMultimap.copyOf(readProperties());
+            if (cache != null) {
+                cache.store(sources, entries);
+            }
+        }
+
+        synchronized (PropertyReader.class) {
+            if (snapshotWatcher != null && !sources.isEmpty()) {
+                snapshot = entries;
+                snapshotWatcher.watch(sources, PropertyReader::invalidateSnapshot);
+            }
+        }
+        return entries;
+    }
+
+    private static synchronized void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    private ListMultimap<String, String> readProperties() {
+        ListMultimap<String, String> entries = SnapshotCache.newEntries();
+        loadIssueTypesAndStatuses();
+        loadIssueLinks();
+
+        for (Map.Entry<String, List<String>> entry : issueTypesAndStatuses.entrySet()) {
+            entries.putAll(ISSUE_TYPE_PREFIX + entry.getKey(), entry.getValue());
+        }
+        entries.putAll(ISSUE_LINK_KEY, issueLinks);
+        return entries;
+    }
+
+    /**
+     * Gets the files containing the property files, i.e the property files themselves or the jar file.
+     * @return the files or an empty list if any of them is unknown
+     */
+    private List<File> getSources() {
+        List<File> sources = Lists.newArrayList();
+
+        for (String filename : new String[]{ISSUE_TYPES_FILENAME, ISSUE_LINKS_FILENAME}) {
+            URL url = getClass().getClassLoader().getResource(filename);
+            File source = null;
+
+            try {
+                if (url != null && "file".equals(url.getProtocol())) {
+                    source = new File(url.toURI());
+                } else if (url != null && "jar".equals(url.getProtocol())) {
+                    String path = url.getPath();
+                    source = new File(new URI(path.substring(0, path.indexOf("!/"))));
+                }
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                logger.debug("Unable to locate {}", url);
+            }
+
+            if (source == null) {
+                return Lists.newArrayList();
+            }
+
+            if (!sources.contains(source)) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+
 
      private void loadIssueLinks() {
          issueLinks = Lists.newArrayList();
 
-        Properties properties = loadPropertiesFile("issuelinks.properties");
+        Properties properties = loadPropertiesFile(ISSUE_LINKS_FILENAME);
 
         if (!properties.isEmpty()) {
             String values = properties.getProperty("issuelinks");
@@ -66,7 +187,7 @@ class PropertyReader {
     private void loadIssueTypesAndStatuses() {
         issueTypesAndStatuses = Maps.newHashMap();
 
-        Properties properties = loadPropertiesFile("issuetypes.properties");
+        Properties properties = loadPropertiesFile(ISSUE_TYPES_FILENAME);
 
         if (!properties.isEmpty()) {
             for (Object property : properties.keySet()) {
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.hash.Hashing;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for saving derived configuration (e.g the githook.* keys of the git configuration)
+ * as a small snapshot file in the cache directory. The snapshot records the path, modification time and size of
+ * every file it was derived from, and is only used as long as none of these files have changed. Validating a
+ * snapshot thus costs one stat per source file and one small read.
+ */
+class SnapshotCache {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotCache.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final String SNAPSHOT_DIRECTORY = "snapshots";
+    // Files changed this recently may be changed again without changing their modification time
+    private static final long RACY_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+
+    private final File snapshotFile;
+
+    /**
+     * Creates a cache for a single snapshot.
+     * @param name the kind of snapshot, e.g gitconfig
+     * @param identity what the snapshot belongs to, e.g the repository directory
+     */
+    SnapshotCache(String name, String identity) {
+        this(new File(new File(CacheDirectory.get(), SNAPSHOT_DIRECTORY),
+                name + "-" + Hashing.sha256().hashString(identity, Charsets.UTF_8).toString().substring(0, 16)));
+    }
+
+    SnapshotCache(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Loads the snapshot if none of its source files have changed since it was stored.
+     * @return the entries of the snapshot or empty if there is no valid snapshot
+     */
+    Optional<ImmutableListMultimap<String, String>> load() {
+        if (!snapshotFile.isFile()) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(snapshotFile)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+
+            int sourceCount = input.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                File source = new File(input.readUTF());
+                long modified = input.readLong();
+                long size = input.readLong();
+                long[] current = stat(source);
+
+                if (current[0] != modified || current[1] != size) {
+                    logger.debug("The snapshot {} is outdated by {}", snapshotFile, source);
+                    return Optional.empty();
+                }
+            }
+
+            ImmutableListMultimap.Builder<String, String> entries = ImmutableListMultimap.builder();
+            int entryCount = input.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                entries.put(input.readUTF(), input.readUTF());
+            }
+            return Optional.of(entries.build());
+
+        } catch (IOException e) {
+            logger.debug("Unable to read the snapshot {}", snapshotFile);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the snapshot. The snapshot isn't stored if any of the source files were changed so recently that
+     * a later change may go unnoticed.
+     * @param sources the files the entries are derived from. Files which don't exist are allowed.
+     * @param entries the entries of the snapshot
+     */
+    void store(Collection<File> sources, ListMultimap<String, String> entries) {
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(sources.size());
+
+            for (File source : sources) {
+                long[] current = stat(source);
+                if (current[0] > now - RACY_INTERVAL) {
+                    logger.debug("Not storing the snapshot {} since {} was just changed", snapshotFile, source);
+                    return;
+                }
+                output.writeUTF(source.getAbsolutePath());
+                output.writeLong(current[0]);
+                output.writeLong(current[1]);
+            }
+
+            output.writeInt(entries.size());
+            for (Map.Entry<String, String> entry : entries.entries()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to create the snapshot {}", snapshotFile);
+            return;
+        }
+
+        try {
+            // The snapshot may contain credentials from the git configuration
+            CacheDirectory.writePrivateFile(snapshotFile, bytes.toByteArray());
+        } catch (IOException e) {
+            logger.debug("Unable to store the snapshot {}", snapshotFile);
+        }
+    }
+
+    /**
+     * Creates an empty multimap for the entries of a snapshot.
+     * @return the multimap
+     */
+    static ListMultimap<String, String> newEntries() {
+        return ArrayListMultimap.create();
+    }
+
+    private static long[] stat(File file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new long[]{attributes.lastModifiedTime().toMillis(), attributes.size()};
+        } catch (NoSuchFileException e) {
+            return new long[]{-1, -1};
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * This class is responsible for telling long-running modes of the hook (e.g the daemon) when a file a snapshot
+ * was derived from is created, changed or deleted. This replaces validating the snapshot on every use.
+ */
+class SnapshotWatcher {
+    private final Logger logger = LoggerFactory.getLogger(SnapshotWatcher.class);
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = Maps.newHashMap();
+    private final Set<Path> watchedDirectories = Sets.newHashSet();
+    private final SetMultimap<Path, Runnable> listeners = HashMultimap.create();
+
+    SnapshotWatcher() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this::processEvents, "snapshot-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the listener once the first time any of the given files changes. The listener is then forgotten.
+     * @param sources the files to watch. Files which don't exist yet are allowed. If their directory doesn't exist
+     *                either (e.g ~/.config/git), the creation of the missing directory is watched instead.
+     * @param listener the listener
+     */
+    synchronized void watch(Collection<File> sources, Runnable listener) {
+        for (File source : sources) {
+            Path file = source.toPath().toAbsolutePath();
+            Path directory = file.getParent();
+
+            // The nearest directory which exists, and the file or missing directory in it
+            while (directory != null && !Files.isDirectory(directory)) {
+                file = directory;
+                directory = directory.getParent();
+            }
+
+            if (directory == null) {
+                // Changes can't be detected. Let the listener know straight away.
+                listener.run();
+                continue;
+            }
+
+            try {
+                if (watchedDirectories.add(directory)) {
+                    directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                            directory);
+                }
+                listeners.put(file, listener);
+            } catch (IOException e) {
+                logger.debug("Unable to watch {}", directory);
+                listener.run();
+            }
+        }
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Set<Runnable> triggered = Sets.newLinkedHashSet();
+            synchronized (this) {
+                Path directory = directories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // Events are lost. Everything must be considered changed.
+                        triggered.addAll(listeners.values());
+                        listeners.clear();
+                    } else if (directory != null) {
+                        Path file = directory.resolve((Path) event.context());
+                        triggered.addAll(listeners.removeAll(file));
+                    }
+                }
+                // A listener only runs once, so it no longer watches the other files of its snapshot either
+                listeners.values().removeAll(triggered);
+
+                if (!key.reset()) {
+                    watchedDirectories.remove(directories.remove(key));
+                }
+            }
+
+            for (Runnable listener : triggered) {
+                listener.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+import org.karivar.utils.other.CacheDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for creating an application class data sharing (AppCDS) archive of the git hook.
+ * The archive contains the classes loaded during a training commit against a local stub of JIRA and is stored
+ * next to the git hook (e.g .git/hooks/util/githook.jsa). The commit-msg script uses the archive when it exists.
+ */
+class StartupTrainer {
+    static final String TRAINING_OPTION = "--train-cds";
+    // Lets the git configuration of a training commit be overridden by system properties, see GitConfig
+    static final String TRAINING_PROPERTY = "githook.training";
+    static final String ARCHIVE_FILENAME = "githook.jsa";
+    private static final String TRAINING_PROJECT = "TRAIN";
+    private static final String TRAINING_ISSUE_KEY = TRAINING_PROJECT + "-1";
+    private static final int MEASUREMENTS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(StartupTrainer.class);
+    private final ResourceBundle messages;
+
+    StartupTrainer(ResourceBundle bundle) {
+        messages = bundle;
+    }
+
+    /**
+     * Runs the training commit, dumps the archive and reports the measured startup time with and without
+     * the archive.
+     * @return the exit code. 0 if the archive is created.
+     */
+    int train() {
+        int javaVersion = getJavaVersion();
+        if (javaVersion < 10) {
+            logger.info(messages.getString("training.unsupported"), System.getProperty("java.version"));
+            return 1;
+        }
+
+        File hookJar = getHookJar();
+        if (hookJar == null) {
+            logger.error(messages.getString("training.nojar"));
+            return 1;
+        }
+
+        File archive = new File(hookJar.getParentFile(), ARCHIVE_FILENAME);
+        File trainingDirectory = Files.createTempDir();
+        HttpServer jiraStub = null;
+
+        try {
+            jiraStub = startJiraStub();
+            String jiraAddress = "http://" + jiraStub.getAddress().getHostString() + ":"
+                    + jiraStub.getAddress().getPort();
+
+            if (!dumpArchive(javaVersion, hookJar, archive, jiraAddress, trainingDirectory)) {
+                logger.error(messages.getString("training.failed"));
+                return 1;
+            }
+
+            long withoutArchive = measure(hookJar, null, jiraAddress, trainingDirectory);
+            long withArchive = measure(hookJar, archive, jiraAddress, trainingDirectory);
+            logger.info(messages.getString("training.result"), archive, withoutArchive, withArchive,
+                    withoutArchive - withArchive);
+
+        } catch (IOException e) {
+            logger.error(messages.getString("training.failed"), e);
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            if (jiraStub != null) {
+                jiraStub.stop(0);
+            }
+            deleteRecursively(trainingDirectory);
+        }
+        return 0;
+    }
+
+    private boolean dumpArchive(int javaVersion, File hookJar, File archive, String jiraAddress,
+                                File trainingDirectory) throws IOException, InterruptedException {
+        archive.delete();
+
+        if (javaVersion >= 13) {
+            // Dynamic archive of the classes loaded by the training commit
+            return runTrainingCommit(hookJar, Collections.singletonList("-XX:ArchiveClassesAtExit="
+                    + archive.getAbsolutePath()), jiraAddress, trainingDirectory) == 0 && archive.isFile();
+        }
+
+        // Static archive based on the list of classes loaded by the training commit
+        File classList = new File(trainingDirectory, "classes.lst");
+        if (runTrainingCommit(hookJar, Collections.singletonList("-XX:DumpLoadedClassList="
+                + classList.getAbsolutePath()), jiraAddress, trainingDirectory) != 0) {
+            return false;
+        }
+
+        List<String> command = Lists.newArrayList(getJavaExecutable(), "-Xshare:dump",
+                "-XX:SharedClassListFile=" + classList.getAbsolutePath(),
+                "-XX:SharedArchiveFile=" + archive.getAbsolutePath(),
+                "-cp", hookJar.getAbsolutePath());
+        if (javaVersion == 10) {
+            command.add(1, "-XX:+UseAppCDS");
+        }
+        return run(command, trainingDirectory) == 0 && archive.isFile();
+    }
+
+    private long measure(File hookJar, File archive, String jiraAddress, File trainingDirectory)
+            throws IOException, InterruptedException {
+        List<String> options = Lists.newArrayList();
+        if (archive != null) {
+            options.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+            options.add("-Xshare:auto");
+        }
+
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            long start = System.nanoTime();
+            runTrainingCommit(hookJar, options, jiraAddress, trainingDirectory);
+            fastest = Math.min(fastest, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return fastest;
+    }
+
+    private int runTrainingCommit(File hookJar, List<String> jvmOptions, String jiraAddress,
+                                  File trainingDirectory) throws IOException, InterruptedException {
+        File commitMessage = new File(trainingDirectory, "COMMIT_EDITMSG");
+        Files.asCharSink(commitMessage, Charsets.UTF_8).write(TRAINING_ISSUE_KEY + " Training commit\n");
+
+        // The git configuration is overridden by system properties, see GitConfig
+        List<String> command = Lists.newArrayList(getJavaExecutable());
+        command.addAll(jvmOptions);
+        command.add("-D" + TRAINING_PROPERTY + "=true");
+        command.add("-Dgithook.jira.address=" + jiraAddress);
+        command.add("-Dgithook.jira.username=training");
+        command.add("-Dgithook.jira.password=" + Base64.getEncoder().encodeToString(
+                "training".getBytes(Charsets.UTF_8)));
+        command.add("-Dgithook.jira.projectkey=" + TRAINING_PROJECT);
+        // The latencies of the stub would make every request to the real JIRA look slow
+        command.add("-Dgithook.jira.hedge=false");
+        // The training issue and the state of the stub must not end up in the cache of the user
+        command.add("-D" + CacheDirectory.DIRECTORY_PROPERTY + "="
+                + new File(trainingDirectory, "cache").getAbsolutePath());
+        if (!messages.getLocale().getLanguage().isEmpty()) {
+            command.add("-Dgithook.language=" + messages.getLocale().getLanguage());
+        }
+        command.add("-cp");
+        command.add(hookJar.getAbsolutePath());
+        command.add(GitHook.class.getName());
+        command.add(commitMessage.getAbsolutePath());
+        return run(command, trainingDirectory);
+    }
+
+    private int run(List<String> command, File workingDirectory) throws IOException, InterruptedException {
+        logger.debug("Running {}", command);
+        Process process = new ProcessBuilder(command)
+                .directory(workingDirectory)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(workingDirectory, "training.log"))
+                .start();
+        return process.waitFor();
+    }
+
+    private HttpServer startJiraStub() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            String base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+            String response;
+            int statusCode = 200;
+
+            if (path.startsWith("/rest/api/2/issue/")) {
+                response = getTrainingIssue(base);
+            } else if (path.startsWith("/rest/api/2/search")) {
+                response = "{\"startAt\":0,\"maxResults\":50,\"total\":0,\"issues\":[]}";
+            } else {
+                response = "{}";
+                statusCode = 404;
+            }
+
+            byte[] body = response.getBytes(Charsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String getTrainingIssue(String base) {
+        return "{\"expand\":\"\",\"id\":\"10000\",\"self\":\"" + base + "/rest/api/2/issue/10000\","
+                + "\"key\":\"" + TRAINING_ISSUE_KEY + "\",\"fields\":{"
+                + "\"summary\":\"Training issue\","
+                + "\"issuetype\":{\"self\":\"" + base + "/rest/api/2/issuetype/3\",\"id\":\"3\","
+                + "\"description\":\"\",\"iconUrl\":\"" + base + "/task.png\",\"name\":\"Task\",\"subtask\":false},"
+                + "\"project\":{\"self\":\"" + base + "/rest/api/2/project/10000\",\"id\":\"10000\","
+                + "\"key\":\"" + TRAINING_PROJECT + "\",\"name\":\"Training\"},"
+                + "\"created\":\"2017-01-01T00:00:00.000+0000\",\"updated\":\"2017-01-01T00:00:00.000+0000\","
+                + "\"status\":{\"self\":\"" + base + "/rest/api/2/status/3\",\"description\":\"\","
+                + "\"iconUrl\":\"" + base + "/inprogress.png\",\"name\":\"In Progress\",\"id\":\"3\"},"
+                + "\"assignee\":null,\"resolution\":null,\"issuelinks\":[]}}";
+    }
+
+    private File getHookJar() {
+        try {
+            File location = new File(GitHook.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (location.isFile()) {
+                return location;
+            }
+        } catch (URISyntaxException | SecurityException e) {
+            logger.debug("Unable to locate the git hook", e);
+        }
+        return null;
+    }
+
+    private static String getJavaExecutable() {
+        return new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+    }
+
+    private static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
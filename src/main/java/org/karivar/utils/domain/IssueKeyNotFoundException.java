@@ -7,12 +7,30 @@
  */
 package org.karivar.utils.domain;
 
+import java.util.Optional;
+
 public class IssueKeyNotFoundException extends RuntimeException {
+    private final Integer statusCode;
+
     public IssueKeyNotFoundException(String message) {
+        this(message, (Integer) null);
+    }
+
+    public IssueKeyNotFoundException(String message, Integer statusCode) {
         super(message);
+        this.statusCode = statusCode;
     }
 
     public IssueKeyNotFoundException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = null;
+    }
+
+    /**
+     * Gets the HTTP status code returned by JIRA, e.g 404 if the issue doesn't exist.
+     * @return the status code or empty if the exception isn't caused by a JIRA response
+     */
+    public Optional<Integer> getStatusCode() {
+        return Optional.ofNullable(statusCode);
     }
 }
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils.domain;
+
+/**
+ * Thrown when JIRA doesn't answer before the deadline of the commit expires.
+ */
+public class JiraTimeoutException extends JiraUnavailableException {
+
+    public JiraTimeoutException(String message) {
+        super(message);
+    }
+
+    public JiraTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils.domain;
+
+/**
+ * Thrown when JIRA can't be used for the commit, e.g because it doesn't answer or has been down for the latest
+ * commits.
+ */
+public class JiraUnavailableException extends IssueKeyNotFoundException {
+
+    public JiraUnavailableException(String message) {
+        super(message);
+    }
+
+    public JiraUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
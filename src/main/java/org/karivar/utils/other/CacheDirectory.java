@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils.other;
+
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * This class is responsible for locating the per-user directory where the git hook keeps files which
+ * outlive a single commit. The location follows the XDG base directory specification, e.g
+ * ~/.cache/git-jira-hook, unless the system property githook.cache.directory names another directory
+ * (e.g for the tests and the training commits, which must leave the cache of the user alone).
+ */
+public final class CacheDirectory {
+    public static final String DIRECTORY_PROPERTY = "githook.cache.directory";
+    private static final Logger logger = LoggerFactory.getLogger(CacheDirectory.class);
+    private static final String HOOK_DIRECTORY_NAME = "git-jira-hook";
+
+    private CacheDirectory() {
+    }
+
+    /**
+     * Gets the cache directory of the git hook. The directory is created if it doesn't exist.
+     * @return the cache directory
+     */
+    public static File get() {
+        String overriddenDirectory = System.getProperty(DIRECTORY_PROPERTY);
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        File directory;
+
+        if (!Strings.isNullOrEmpty(overriddenDirectory)) {
+            directory = new File(overriddenDirectory);
+        } else if (!Strings.isNullOrEmpty(cacheHome)) {
+            directory = new File(cacheHome, HOOK_DIRECTORY_NAME);
+        } else {
+            directory = new File(new File(System.getProperty("user.home"), ".cache"), HOOK_DIRECTORY_NAME);
+        }
+
+        if (!directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        return directory;
+    }
+
+    /**
+     * Writes a file which only the current user may read. The file is written to a temporary file which is
+     * renamed, so that other processes either see the old or the new contents, but never a partial file.
+     * @param file the file
+     * @param contents the contents of the file
+     * @throws IOException if the file can't be written
+     */
+    public static void writePrivateFile(File file, byte[] contents) throws IOException {
+        file.getParentFile().mkdirs();
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+
+        try {
+            try {
+                Files.setPosixFilePermissions(temporaryFile.toPath(), PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                logger.debug("Unable to restrict the permissions of {}", temporaryFile);
+            }
+            Files.write(temporaryFile.toPath(), contents);
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+}
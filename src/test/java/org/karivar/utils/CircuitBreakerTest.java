@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private File directory;
+    private File stateFile;
+
+    @Before
+    public void setUp() {
+        directory = Files.createTempDir();
+        stateFile = new File(directory, "circuit");
+    }
+
+    @After
+    public void tearDown() {
+        stateFile.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void openAfterConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(stateFile, 2);
+
+        circuitBreaker.recordFailure();
+        assertTrue("Below the threshold", circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        assertFalse(circuitBreaker.allowRequest());
+        assertTrue(circuitBreaker.getRemainingCoolDown() > 25000);
+        assertFalse("The state is shared between processes", new CircuitBreaker(stateFile, 2).allowRequest());
+    }
+
+    @Test
+    public void closeAfterSuccess() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(stateFile, 2);
+
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+
+        assertTrue("The failures aren't consecutive", circuitBreaker.allowRequest());
+        assertEquals(0, circuitBreaker.getRemainingCoolDown());
+    }
+
+    @Test
+    public void disabled() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(stateFile, 0);
+
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+
+        assertTrue(circuitBreaker.allowRequest());
+        assertFalse(stateFile.exists());
+    }
+}
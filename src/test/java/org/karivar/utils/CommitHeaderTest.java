@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommitHeaderTest {
+
+    @Test
+    public void parseWords() {
+        CommitHeader header = CommitHeader.parse("  example-1\tAdded  som files ");
+
+        assertEquals(4, header.getWordCount());
+        assertEquals("example-1", header.getWord(0));
+        assertEquals(2, header.getWordStart(0));
+        assertEquals(11, header.getWordEnd(0));
+        assertEquals("example-1 Added som files", header.getStrippedText(false));
+        assertFalse(header.isCommitOverridden());
+        assertFalse(header.isCommunicationOverridden());
+        assertFalse(header.isAssigneeOverridden());
+    }
+
+    @Test
+    public void parseEmpty() {
+        CommitHeader header = CommitHeader.parse("");
+
+        assertEquals(0, header.getWordCount());
+        assertEquals("", header.getStrippedText(true));
+        assertFalse(header.isCommitOverridden());
+    }
+
+    @Test
+    public void parseOptions() {
+        CommitHeader header = CommitHeader.parse("example-1 fix the -a flag -a -O");
+
+        assertTrue(header.isCommunicationOverridden());
+        assertTrue(header.isAssigneeOverridden());
+        assertEquals("EXAMPLE-1 fix the -a flag", header.getStrippedText(true));
+    }
+
+    @Test
+    public void parseOnlyOption() {
+        CommitHeader header = CommitHeader.parse("-O");
+
+        assertFalse("The first word isn't an option", header.isCommunicationOverridden());
+        assertEquals("-O", header.getStrippedText(false));
+    }
+
+    @Test
+    public void parseCommitOverridden() {
+        CommitHeader header = CommitHeader.parse("none did some configuration manager work");
+
+        assertTrue(header.isCommitOverridden());
+        assertEquals("NONE did some configuration manager work", header.getStrippedText(true));
+    }
+
+    @Test
+    public void findIssueKeys() {
+        CommitHeader header = CommitHeader.parse("[pr-12] Fixes example-1: and example-2");
+        List<IssueKeyMatcher.Match> matches = header.findIssueKeys(IssueKeyMatcher.forProjectKeys("PR EXAMPLE"));
+
+        assertEquals(3, matches.size());
+        assertEquals("PR-12", matches.get(0).getKey());
+        assertEquals("EXAMPLE-1", matches.get(1).getKey());
+    }
+}
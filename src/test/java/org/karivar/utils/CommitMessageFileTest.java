@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.primitives.Bytes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CommitMessageFileTest {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readHeader() throws Exception {
+        File file = createFile("example-1 Added some files -O\r\n\r\nThe body\r\n".getBytes(Charsets.UTF_8));
+
+        CommitMessageFile commitMessage = CommitMessageFile.read(file);
+
+        assertEquals("example-1 Added some files -O", commitMessage.getHeader());
+        assertFalse(commitMessage.isEmpty());
+    }
+
+    @Test
+    public void readEmpty() throws Exception {
+        CommitMessageFile commitMessage = CommitMessageFile.read(createFile(new byte[0]));
+
+        assertEquals("", commitMessage.getHeader());
+        assertTrue(commitMessage.isEmpty());
+        assertTrue(commitMessage.readLines().isEmpty());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void readUnknownFile() throws Exception {
+        CommitMessageFile.read(new File(temporaryFolder.getRoot(), "something"));
+    }
+
+    @Test
+    public void writeCopiesBodyAsItIs() throws Exception {
+        // The body isn't valid UTF-8, and must still be copied unchanged
+        byte[] body = {'\r', '\n', '\r', '\n', 'f', 'o', (byte) 0xE5, '\r', '\n'};
+        File file = createFile(Bytes.concat("example-1 Added some files -O".getBytes(Charsets.UTF_8), body));
+
+        CommitMessageFile.read(file).write(file, "EXAMPLE-1 Added some files", Arrays.asList("", "Hook v 1.0"));
+
+        byte[] expected = Bytes.concat("EXAMPLE-1 Added some files".getBytes(Charsets.UTF_8), body,
+                ("" + LINE_SEPARATOR + "Hook v 1.0" + LINE_SEPARATOR).getBytes(Charsets.UTF_8));
+        assertArrayEquals(expected, Files.toByteArray(file));
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void writeHeaderOnly() throws Exception {
+        File file = createFile("NONE did some work".getBytes(Charsets.UTF_8));
+        File target = new File(temporaryFolder.getRoot(), "output.txt");
+
+        CommitMessageFile.read(file).write(target, "NONE did some work", Collections.singletonList("Hook v 1.0"));
+
+        assertEquals("NONE did some work" + LINE_SEPARATOR + "Hook v 1.0" + LINE_SEPARATOR,
+                Files.asCharSource(target, Charsets.UTF_8).read());
+        assertEquals("NONE did some work", Files.asCharSource(file, Charsets.UTF_8).read());
+    }
+
+    private File createFile(byte[] contents) throws Exception {
+        File file = temporaryFolder.newFile("COMMIT_EDITMSG");
+        Files.write(contents, file);
+        return file;
+    }
+}
@@ -109,6 +109,26 @@ public class CommitMessageManipulatorTest {
         assertTrue("Assignee isn't overridden",  manipulator.isAssigneeOverridden());
     }
 
+    @Test
+    public void getFetchPlan() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/onlinenormalcommit.txt");
+        FetchPlan fetchPlan = manipulator.getFetchPlan(Arrays.asList("Relates", "Blocks"));
+
+        assertEquals(new TreeSet<>(Arrays.asList("assignee", "issuelinks", "issuetype", "parent", "status",
+                "summary")), fetchPlan.getFields());
+    }
+
+    @Test
+    public void getFetchPlanAssigneeOverriddenWithoutIssueLinks() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/onelineassigneeoverridden.txt");
+        FetchPlan fetchPlan = manipulator.getFetchPlan(Collections.emptyList());
+
+        assertFalse("The assignee isn't needed", fetchPlan.requires(FetchPlan.Requirement.ASSIGNEE_CHECK));
+        assertEquals("fields=issuetype,parent,status,summary", fetchPlan.toQueryParameters());
+    }
+
     @Test
     public void getJiraIssueKeyFromCommitMessage() throws Exception {
         manipulator = new CommitMessageManipulator(resourceBundle);
@@ -118,6 +138,14 @@ public class CommitMessageManipulatorTest {
         assertEquals("EXAMPLE-1", jiraIssue.get());
     }
 
+    @Test
+    public void getJiraIssueKeysFromCommitMessage() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/onelinemultipleissues.txt");
+        List<String> jiraIssues = manipulator.getJiraIssueKeysFromCommitMessage(JIRA_ISSUE_PATTERNS);
+        assertEquals(Arrays.asList("EXAMPLE-1", "PR-12"), jiraIssues);
+    }
+
     @Test
     public void getJiraIssueKeyFromCommitMessageNone() throws Exception {
         manipulator = new CommitMessageManipulator(resourceBundle);
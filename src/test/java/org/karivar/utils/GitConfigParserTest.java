@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GitConfigParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File home;
+    private File repository;
+    private Map<String, String> environment;
+
+    @Before
+    public void setUp() throws Exception {
+        home = temporaryFolder.newFolder("home");
+        repository = temporaryFolder.newFolder("repository");
+        new File(repository, ".git").mkdirs();
+        environment = ImmutableMap.of("GIT_CONFIG_NOSYSTEM", "1");
+    }
+
+    @Test
+    public void parseGlobalAndLocal() throws Exception {
+        write(new File(home, ".gitconfig"), "[githook \"jira\"]\n"
+                + "\tusername = alice\n"
+                + "\taddress = https://jira.example.com ; comment\n"
+                + "[user]\n"
+                + "\tname = Alice\n");
+        write(new File(repository, ".git/config"), "[githook]\n"
+                + "\tlanguage = no\n"
+                + "[githook \"jira\"]\n"
+                + "\tprojectkey = EXAMPLE\n"
+                + "\tprojectkey = PR\n");
+
+        GitConfigSnapshot snapshot = new GitConfigParser(home, environment).parse(repository);
+
+        assertEquals("alice", snapshot.getValue("githook.jira.username", true, false));
+        assertEquals("https://jira.example.com", snapshot.getValue("githook.jira.address", true, false));
+        assertNull("Local values aren't global", snapshot.getValue("githook.language", true, false));
+        assertEquals("no", snapshot.getValue("githook.language", false, false));
+        assertEquals("EXAMPLE PR", snapshot.getValue("githook.jira.projectkey", false, true));
+        assertEquals("PR", snapshot.getValue("githook.jira.projectkey", false, false));
+        assertNull("Only githook keys are kept", snapshot.getValue("user.name", false, false));
+    }
+
+    @Test
+    public void parseCaseAndQuoting() throws Exception {
+        write(new File(repository, ".git/config"), "[GitHook \"jira\"]\n"
+                + "\tProjectKey = \"  EXAMPLE \" # comment\n"
+                + "\tpassword = a\\\"b\\\\c\n"
+                + "\taddress = https://jira.\\\n"
+                + "example.com\n"
+                + "[githook.Other]\n"
+                + "\tenabled\n");
+
+        GitConfigSnapshot snapshot = new GitConfigParser(home, environment).parse(repository);
+
+        assertEquals("  EXAMPLE ", snapshot.getValue("githook.jira.projectkey", false, false));
+        assertEquals("a\"b\\c", snapshot.getValue("githook.jira.password", false, false));
+        assertEquals("https://jira.example.com", snapshot.getValue("githook.jira.address", false, false));
+        assertEquals("true", snapshot.getValue("githook.other.enabled", false, false));
+        assertNull("Subsections are case sensitive", snapshot.getValue("githook.JIRA.projectkey", false, false));
+    }
+
+    @Test
+    public void parseIncludes() throws Exception {
+        write(new File(home, ".gitconfig"), "[include]\n"
+                + "\tpath = jira.inc\n"
+                + "[includeIf \"gitdir:" + repository.getAbsolutePath() + "/\"]\n"
+                + "\tpath = ~/work.inc\n"
+                + "[includeIf \"gitdir:/nowhere/\"]\n"
+                + "\tpath = ~/other.inc\n");
+        write(new File(home, "jira.inc"), "[githook \"jira\"]\n\tusername = alice\n");
+        write(new File(home, "work.inc"), "[githook \"jira\"]\n\taddress = https://work.example.com\n");
+        write(new File(home, "other.inc"), "[githook \"jira\"]\n\taddress = https://other.example.com\n");
+
+        GitConfigSnapshot snapshot = new GitConfigParser(home, environment).parse(repository);
+
+        assertEquals("alice", snapshot.getValue("githook.jira.username", true, false));
+        assertEquals("https://work.example.com", snapshot.getValue("githook.jira.address", true, false));
+    }
+
+    @Test
+    public void parseWorktree() throws Exception {
+        File worktreeGitDirectory = new File(repository, ".git/worktrees/feature");
+        worktreeGitDirectory.mkdirs();
+        write(new File(worktreeGitDirectory, "commondir"), "../..\n");
+        File worktree = temporaryFolder.newFolder("feature");
+        write(new File(worktree, ".git"), "gitdir: " + worktreeGitDirectory.getAbsolutePath() + "\n");
+
+        write(new File(repository, ".git/config"), "[extensions]\n\tworktreeConfig = true\n"
+                + "[githook \"jira\"]\n\tprojectkey = EXAMPLE\n");
+        write(new File(worktreeGitDirectory, "config.worktree"), "[githook \"jira\"]\n\tprojectkey = PR\n");
+
+        GitConfigSnapshot snapshot = new GitConfigParser(home, environment).parse(new File(worktree, "src"));
+
+        assertEquals("EXAMPLE PR", snapshot.getValue("githook.jira.projectkey", false, true));
+    }
+
+    @Test(expected = GitConfigParser.UnsupportedConfigException.class)
+    public void parseUnknownIncludeIfCondition() throws Exception {
+        write(new File(home, ".gitconfig"), "[includeIf \"hasconfig:remote.*.url:https://**\"]\n"
+                + "\tpath = other.inc\n");
+        new GitConfigParser(home, environment).parse(repository);
+    }
+
+    @Test(expected = GitConfigParser.UnsupportedConfigException.class)
+    public void parseConfigFromEnvironment() throws Exception {
+        new GitConfigParser(home, ImmutableMap.of("GIT_CONFIG_PARAMETERS", "'githook.language'='no'"))
+                .parse(repository);
+    }
+
+    @Test
+    public void toRegex() {
+        assertTrue(GitConfigParser.toRegex("**/work/**", false).matcher("/home/alice/work/repo/.git/").matches());
+        assertFalse(GitConfigParser.toRegex("/work/*/", false).matcher("/work/a/b/").matches());
+        assertTrue(GitConfigParser.toRegex("/Work/**", true).matcher("/work/a/b/").matches());
+    }
+
+    private static void write(File file, String contents) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GitHookTest {
+    // Well below the default JIRA timeout of 10 s, so a commit waiting for JIRA or its deadline fails the test
+    private static final long BYPASS_THRESHOLD_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void commitOverriddenLoadsNoJiraClasses() throws Exception {
+        assertBypassLoadsNoJiraClasses("NONE did some configuration manager work");
+    }
+
+    @Test
+    public void communicationOverriddenLoadsNoJiraClasses() throws Exception {
+        assertBypassLoadsNoJiraClasses("EXAMPLE-1 fixed the build -O");
+    }
+
+    private void assertBypassLoadsNoJiraClasses(String header) throws Exception {
+        File commitMessageFile = temporaryFolder.newFile("COMMIT_EDITMSG");
+        Files.asCharSink(commitMessageFile, Charsets.UTF_8).write(header + "\n");
+
+        // The hook is loaded in a class loader of its own, so the classes it loads can be observed
+        RecordingClassLoader classLoader = new RecordingClassLoader();
+        Class<?> gitHookClass = classLoader.loadClass(GitHook.class.getName());
+        Constructor<?> constructor = gitHookClass.getDeclaredConstructor(ConcurrentMap.class);
+        constructor.setAccessible(true);
+        Method init = gitHookClass.getDeclaredMethod("init", String[].class);
+        init.setAccessible(true);
+
+        long start = System.nanoTime();
+        Object exitCode = init.invoke(constructor.newInstance(new ConcurrentHashMap<>()),
+                (Object) new String[]{commitMessageFile.getPath()});
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(0, exitCode);
+        assertTrue("Accepted the commit in " + elapsedMillis + " ms", elapsedMillis < BYPASS_THRESHOLD_MILLIS);
+        for (String className : classLoader.loadedClasses) {
+            assertFalse(className + " was loaded", className.startsWith("com.atlassian."));
+            assertFalse(className + " was loaded", className.equals(JiraConnector.class.getName())
+                    || className.endsWith("IssueSource"));
+        }
+        assertTrue(Files.asCharSource(commitMessageFile, Charsets.UTF_8).read().contains(
+                header.substring(0, header.indexOf(' '))));
+    }
+
+    /**
+     * Loads the classes of the test class path by itself, and records the name of every class it's asked for.
+     */
+    private static final class RecordingClassLoader extends URLClassLoader {
+        private final Set<String> loadedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        RecordingClassLoader() throws MalformedURLException {
+            super(getClassPath(), ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            loadedClasses.add(name);
+            return super.loadClass(name, resolve);
+        }
+
+        private static URL[] getClassPath() throws MalformedURLException {
+            List<URL> urls = Lists.newArrayList();
+            for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings()
+                    .split(System.getProperty("java.class.path"))) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+            return urls.toArray(new URL[0]);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgedIssueSourceTest {
+
+    private File directory;
+    private LatencyTracker latencyTracker;
+
+    @Before
+    public void setUp() {
+        directory = Files.createTempDir();
+        latencyTracker = new LatencyTracker(new File(directory, "latencies"));
+        for (int i = 1; i <= 20; i++) {
+            latencyTracker.record(i * 5);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void getPercentile() {
+        assertEquals(95, latencyTracker.getPercentile(95));
+        assertEquals(50, latencyTracker.getPercentile(50));
+        assertEquals("The latencies are kept", 95,
+                new LatencyTracker(new File(directory, "latencies")).getPercentile(95));
+    }
+
+    @Test
+    public void getPercentileOfTooFewLatencies() {
+        assertEquals(-1, new LatencyTracker(new File(directory, "other")).getPercentile(95));
+    }
+
+    @Test
+    public void hedgeSlowRequest() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        IssueSource slowFirstRequest = new IssueSource() {
+            @Override
+            public Response get(String resource, Deadline deadline) throws IOException {
+                if (requests.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return new Response(200, "{}");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        long started = System.nanoTime();
+        try (IssueSource issueSource = new HedgedIssueSource(slowFirstRequest, latencyTracker)) {
+            IssueSource.Response response = issueSource.get("/rest/api/2/issue/EXAMPLE-1", Deadline.after(10000));
+
+            assertEquals(200, response.getStatusCode());
+        }
+        assertEquals(2, requests.get());
+        assertTrue((System.nanoTime() - started) / 1000000 < 4000);
+    }
+
+    @Test
+    public void recordOnlySuccessfulRequests() throws IOException {
+        LatencyTracker otherTracker = new LatencyTracker(new File(directory, "other"));
+        AtomicInteger requests = new AtomicInteger();
+        IssueSource failingSource = new IssueSource() {
+            @Override
+            public Response get(String resource, Deadline deadline) {
+                return new Response(requests.incrementAndGet() % 2 == 0 ? 404 : 503, "{}");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (IssueSource issueSource = new HedgedIssueSource(failingSource, otherTracker)) {
+            for (int i = 0; i < 20; i++) {
+                assertNotEquals(200, issueSource.get("/rest/api/2/issue/EXAMPLE-1", Deadline.after(10000))
+                        .getStatusCode());
+            }
+        }
+        assertEquals(-1, otherTracker.getPercentile(95));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class HookSessionTest {
+    private static final IssueKeyMatcher MATCHER = IssueKeyMatcher.forProjectKeys("EXAMPLE");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File gitDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        gitDirectory = temporaryFolder.newFolder(".git");
+    }
+
+    @Test
+    public void noSession() {
+        assertFalse(HookSession.detect(gitDirectory, Collections.emptyMap()).isPresent());
+    }
+
+    @Test
+    public void interactiveRebase() throws Exception {
+        write("rebase-merge/onto", "0123456789abcdef\n");
+        write("rebase-merge/git-rebase-todo", "pick 1a2b3c4 EXAMPLE-1 Fixed the accounts\n"
+                + "reword 2b3c4d5 example-2: Listing of accounts\n"
+                + "pick 3c4d5e6 EXAMPLE-1 Fixed the build\n"
+                + "\n"
+                + "# Rebase 0123456 onto 0123456 (3 commands)\n"
+                + "# EXAMPLE-9 is only mentioned in a comment\n");
+
+        HookSession session = HookSession.detect(gitDirectory, Collections.emptyMap()).get();
+
+        assertEquals(HookSession.Kind.REBASE_MERGE, session.getKind());
+        assertEquals(ImmutableSet.of("EXAMPLE-1", "EXAMPLE-2"), session.findIssueKeys(MATCHER));
+        assertEquals("The same rebase", session.getId(),
+                HookSession.detect(gitDirectory, Collections.emptyMap()).get().getId());
+    }
+
+    @Test
+    public void applyPatches() throws Exception {
+        write("rebase-apply/next", "2\n");
+        write("rebase-apply/last", "3\n");
+        write("rebase-apply/0001", "From: Alice\nSubject: [PATCH 1/3] EXAMPLE-1 Applied\n\nBody\n");
+        write("rebase-apply/0002", "From: Alice\nSubject: [PATCH 2/3] EXAMPLE-2 Listing\n\nSubject: EXAMPLE-4\n");
+        write("rebase-apply/0003", "From: Alice\nSubject: [PATCH 3/3] EXAMPLE-3 Accounts\n\nBody\n");
+
+        HookSession session = HookSession.detect(gitDirectory, Collections.emptyMap()).get();
+
+        assertEquals(HookSession.Kind.REBASE_APPLY, session.getKind());
+        assertEquals(ImmutableSet.of("EXAMPLE-2", "EXAMPLE-3"), session.findIssueKeys(MATCHER));
+    }
+
+    @Test
+    public void cherryPick() throws Exception {
+        write("CHERRY_PICK_HEAD", "1a2b3c4d\n");
+        write("sequencer/head", "0123456789abcdef\n");
+        write("sequencer/todo", "pick 1a2b3c4 EXAMPLE-5 Backported the fix\n");
+
+        HookSession session = HookSession.detect(gitDirectory, Collections.emptyMap()).get();
+
+        assertEquals(HookSession.Kind.CHERRY_PICK, session.getKind());
+        assertEquals(ImmutableSet.of("EXAMPLE-5"), session.findIssueKeys(MATCHER));
+    }
+
+    @Test
+    public void script() {
+        HookSession session = HookSession.detect(gitDirectory,
+                ImmutableMap.of(HookSession.SESSION_VARIABLE, "import-42")).get();
+
+        assertEquals(HookSession.Kind.SCRIPT, session.getKind());
+        assertTrue(session.findIssueKeys(MATCHER).isEmpty());
+        assertFalse("Another script", session.getId().equals(HookSession.detect(gitDirectory,
+                ImmutableMap.of(HookSession.SESSION_VARIABLE, "import-43")).get().getId()));
+    }
+
+    private void write(String path, String contents) throws Exception {
+        File file = new File(gitDirectory, path);
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.other.UTF8Control;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HookTrailerTest {
+    private static final String MESSAGE_BODY = "EXAMPLE-1 Fixed the accounts\n\nThe body\n";
+    private static final String TRAILER = "\nSummary: Add functionality for accounting\n"
+            + "Related to: EXAMPLE-3 Listing of accounts\n"
+            + "Committed using hook v. 0.9.5 [EXAMPLE-1; 2017-05-01T12:00:00Z]\n";
+    private static final String COMMENTS = "\n# Please enter the commit message for your changes.\n";
+    private static final Instant FETCHED = Instant.parse("2017-05-01T12:00:00Z");
+    private static final long FRESHNESS = TimeUnit.HOURS.toMillis(1);
+
+    private static ResourceBundle messages;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        messages = ResourceBundle.getBundle("messages", Locale.forLanguageTag("en"), new UTF8Control());
+    }
+
+    @Test
+    public void findTrailerFollowedByComments() throws Exception {
+        HookTrailer trailer = findTrailer(MESSAGE_BODY + TRAILER + COMMENTS).get();
+
+        assertEquals("0.9.5", trailer.getHookVersion());
+        assertEquals(Collections.singleton("EXAMPLE-1"), trailer.getIssueKeys());
+        assertEquals(Optional.of(FETCHED), trailer.getFetched());
+        assertEquals(Arrays.asList("Summary: Add functionality for accounting",
+                "Related to: EXAMPLE-3 Listing of accounts"), trailer.getIssueLines());
+        assertEquals(MESSAGE_BODY.length(), trailer.getStart());
+        assertEquals(MESSAGE_BODY.length() + TRAILER.length(), trailer.getEnd());
+    }
+
+    @Test
+    public void findNoTrailer() throws Exception {
+        assertFalse(findTrailer(MESSAGE_BODY + COMMENTS).isPresent());
+        assertFalse(findTrailer("Committed using hook v. 0.9.5").isPresent());
+    }
+
+    @Test
+    public void reusableWhenFresh() throws Exception {
+        HookTrailer trailer = findTrailer(MESSAGE_BODY + TRAILER).get();
+        Instant now = FETCHED.plusSeconds(60);
+
+        assertTrue(trailer.isReusable(Collections.singletonList("EXAMPLE-1"), false, "0.9.5", now, FRESHNESS));
+        assertFalse("Stale", trailer.isReusable(Collections.singletonList("EXAMPLE-1"), false, "0.9.5",
+                FETCHED.plusMillis(FRESHNESS), FRESHNESS));
+        assertFalse("Other issues", trailer.isReusable(Arrays.asList("EXAMPLE-1", "EXAMPLE-2"), false, "0.9.5",
+                now, FRESHNESS));
+        assertFalse("Other version", trailer.isReusable(Collections.singletonList("EXAMPLE-1"), false, "0.9.6",
+                now, FRESHNESS));
+    }
+
+    @Test
+    public void notReusableWhenChecksWereSkipped() throws Exception {
+        HookTrailer trailer = findTrailer(MESSAGE_BODY + "\nJIRA was unavailable. The checks are skipped\n"
+                + "Committed using hook v. 0.9.5 [EXAMPLE-1; 2017-05-01T12:00:00Z]\n").get();
+
+        assertFalse(trailer.isReusable(Collections.singletonList("EXAMPLE-1"), false, "0.9.5",
+                FETCHED.plusSeconds(60), FRESHNESS));
+    }
+
+    @Test
+    public void replaceTrailer() throws Exception {
+        File file = createFile(MESSAGE_BODY + TRAILER + COMMENTS);
+        CommitMessageFile commitMessage = CommitMessageFile.read(file);
+        HookTrailer trailer = HookTrailer.find(commitMessage, messages).get();
+
+        commitMessage.write(file, commitMessage.getHeader(), trailer.getStart(), trailer.getEnd(),
+                Arrays.asList("", "Summary: Story", "Committed using hook v. 0.9.6"));
+
+        String separator = System.lineSeparator();
+        assertEquals(MESSAGE_BODY + separator + "Summary: Story" + separator + "Committed using hook v. 0.9.6"
+                + separator + COMMENTS, Files.asCharSource(file, Charsets.UTF_8).read());
+    }
+
+    private Optional<HookTrailer> findTrailer(String contents) throws Exception {
+        return HookTrailer.find(CommitMessageFile.read(createFile(contents)), messages);
+    }
+
+    private File createFile(String contents) throws Exception {
+        File file = File.createTempFile("COMMIT_EDITMSG", null, temporaryFolder.getRoot());
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpIssueSourceTest {
+
+    private HttpServer server;
+    private IssueSource issueSource;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/jira/rest/api/2/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.setExecutor(executor);
+        server.createContext("/jira/rest/api/2/issue/", exchange -> {
+            byte[] body;
+            int statusCode;
+            if (!"Basic YWxpY2U6c2VjcmV0".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                statusCode = 401;
+                body = new byte[0];
+            } else if (exchange.getRequestURI().getPath().endsWith("EXAMPLE-1")) {
+                statusCode = 200;
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream output = new GZIPOutputStream(compressed)) {
+                    output.write("{\"key\":\"EXAMPLE-1\",\"fields\":{\"summary\":\"Øl\"}}".getBytes(Charsets.UTF_8));
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            } else {
+                statusCode = 404;
+                body = "{\"errorMessages\":[\"Issue Does Not Exist\"]}".getBytes(Charsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(statusCode, body.length > 0 ? body.length : -1);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        URI jiraAddress = URI.create("http://localhost:" + server.getAddress().getPort() + "/jira/");
+        issueSource = new HttpIssueSource(jiraAddress, "alice", "secret");
+    }
+
+    @After
+    public void tearDown() {
+        issueSource.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void getCompressedIssue() throws IOException {
+        IssueSource.Response response = issueSource.get("/rest/api/2/issue/EXAMPLE-1?fields=summary", Deadline.after(5000));
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("{\"key\":\"EXAMPLE-1\",\"fields\":{\"summary\":\"Øl\"}}", response.getBody());
+    }
+
+    @Test
+    public void getMissingIssue() throws IOException {
+        IssueSource.Response response = issueSource.get("/rest/api/2/issue/EXAMPLE-2", Deadline.after(5000));
+
+        assertEquals(404, response.getStatusCode());
+        assertTrue(response.getBody().contains("Issue Does Not Exist"));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void getSlowResource() throws IOException {
+        issueSource.get("/rest/api/2/slow", Deadline.after(200));
+    }
+
+    @Test
+    public void getWithWrongCredentials() throws IOException {
+        URI jiraAddress = URI.create("http://localhost:" + server.getAddress().getPort() + "/jira");
+        IssueSource.Response response = new HttpIssueSource(jiraAddress, "alice", "wrong")
+                .get("/rest/api/2/issue/EXAMPLE-1", Deadline.after(5000));
+
+        assertEquals(401, response.getStatusCode());
+        assertEquals("", response.getBody());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IssueCacheTest {
+
+    private static final Set<String> FIELDS = ImmutableSet.of("assignee", "issuelinks", "issuetype", "parent",
+            "status", "summary");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private JiraIssue issue;
+
+    @Before
+    public void setUp() {
+        issue = new JiraIssue("EXAMPLE-1", "Story");
+        issue.setStatus("In Progress");
+        issue.setAssignee(Optional.of(new User("alice", "Alice")));
+        issue.setIssueTypeName("Sub-task");
+        issue.setSubtask(true);
+        issue.setParentIssue(Optional.of(new BasicJiraIssue("EXAMPLE-2", "Parent")));
+        issue.setRelatedIssues(Arrays.asList(new BasicJiraIssue("EXAMPLE-3", "Related")));
+    }
+
+    @Test
+    public void lookupWithoutCachedIssue() {
+        IssueCache.Lookup lookup = createCache(60000, 60000).lookup("EXAMPLE-1", FIELDS);
+
+        assertFalse(lookup.getIssue().isPresent());
+        assertEquals(FIELDS, lookup.getMissingFields());
+    }
+
+    @Test
+    public void storeAndLookup() {
+        IssueCache issueCache = createCache(60000, 60000);
+        issueCache.store(issueCache.lookup("EXAMPLE-1", FIELDS), issue);
+
+        IssueCache.Lookup lookup = createCache(60000, 60000).lookup("example-1", FIELDS);
+
+        assertTrue("The issue is cached", lookup.getIssue().isPresent());
+        assertEquals(issue, lookup.getIssue().get());
+        assertEquals("Story", lookup.getIssue().get().getSummary());
+    }
+
+    @Test
+    public void lookupOutdatedVolatileFields() {
+        IssueCache issueCache = createCache(0, 60000);
+        issueCache.store(issueCache.lookup("EXAMPLE-1", FIELDS), issue);
+
+        IssueCache.Lookup lookup = issueCache.lookup("EXAMPLE-1", FIELDS);
+
+        assertFalse(lookup.getIssue().isPresent());
+        assertEquals(ImmutableSet.of("assignee", "status"), lookup.getMissingFields());
+    }
+
+    @Test
+    public void storeFetchedFields() {
+        IssueCache issueCache = createCache(0, 60000);
+        issueCache.store(issueCache.lookup("EXAMPLE-1", FIELDS), issue);
+
+        JiraIssue fetchedIssue = new JiraIssue("EXAMPLE-1", null);
+        fetchedIssue.setStatus("Done");
+        JiraIssue storedIssue = issueCache.store(issueCache.lookup("EXAMPLE-1", FIELDS), fetchedIssue);
+
+        assertEquals("Story", storedIssue.getSummary());
+        assertEquals("Done", storedIssue.getStatus());
+        assertNull("The assignee is removed", storedIssue.getAssignee());
+        assertEquals(issue.getRelatedIssues(), storedIssue.getRelatedIssues());
+    }
+
+    @Test
+    public void lookupFailure() {
+        IssueCache issueCache = createCache(60000, 60000);
+        issueCache.storeFailure("EXAMPLE-1", new IssueKeyNotFoundException("Not found", 404));
+
+        try {
+            issueCache.lookup("EXAMPLE-1", FIELDS);
+            fail("The failure is cached");
+        } catch (IssueKeyNotFoundException e) {
+            assertEquals("Not found", e.getMessage());
+            assertEquals(Optional.of(404), e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void lockAndRelease() {
+        IssueCache issueCache = createCache(60000, 60000);
+
+        try (IssueCache.Lock ignored = issueCache.lock("EXAMPLE-1", Deadline.after(10000))) {
+            assertTrue(temporaryFolder.getRoot().listFiles().length > 0);
+        }
+        try (IssueCache.Lock ignored = issueCache.lock("EXAMPLE-1", Deadline.after(10000))) {
+            assertNotNull(ignored);
+        }
+    }
+
+    @Test
+    public void lockLeavesTimeToFetch() {
+        IssueCache issueCache = createCache(60000, 60000);
+        Deadline deadline = Deadline.after(1000);
+
+        // E.g a slow prefetch holding the lock of the issue
+        try (IssueCache.Lock ignored = issueCache.lock("EXAMPLE-1", Deadline.after(10000))) {
+            try (IssueCache.Lock timedOut = issueCache.lock("EXAMPLE-1", deadline)) {
+                assertTrue("Left " + deadline.getRemainingMillis() + " ms to fetch the issue",
+                        deadline.getRemainingMillis() >= 300);
+                assertNotNull(timedOut);
+            }
+        }
+    }
+
+    @Test
+    public void lockWaitsUntilDeadlineAtMost() {
+        IssueCache issueCache = createCache(60000, 60000);
+
+        try (IssueCache.Lock ignored = issueCache.lock("EXAMPLE-1", Deadline.after(10000))) {
+            long start = System.nanoTime();
+            try (IssueCache.Lock timedOut = issueCache.lock("EXAMPLE-1", Deadline.after(100))) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                // The lock would otherwise be waited for during several seconds
+                assertTrue("Waited " + elapsedMillis + " ms for the lock", elapsedMillis < 2000);
+                assertNotNull(timedOut);
+            }
+        }
+    }
+
+    private IssueCache createCache(long volatileTimeToLive, long stableTimeToLive) {
+        return new IssueCache(temporaryFolder.getRoot(), volatileTimeToLive, stableTimeToLive, 60000);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class IssueCodecTest {
+
+    private JiraIssue issue;
+
+    @Before
+    public void setUp() {
+        issue = new JiraIssue("EXAMPLE-1", "Øl på fredag");
+        issue.setStatus("In Progress");
+        issue.setAssignee(Optional.of(new User("alice", "Alice")));
+        issue.setIssueTypeName("Sub-task");
+        issue.setSubtask(true);
+        issue.setParentIssue(Optional.of(new BasicJiraIssue("EXAMPLE-2", "Parent")));
+        issue.setRelatedIssues(Arrays.asList(new BasicJiraIssue("EXAMPLE-3", "Related"),
+                new BasicJiraIssue("EXAMPLE-4", null)));
+    }
+
+    @Test
+    public void encodeAndDecode() {
+        JiraIssue decodedIssue = IssueCodec.decode(IssueCodec.encode(issue));
+
+        assertEquals(issue, decodedIssue);
+        assertEquals("EXAMPLE-1", decodedIssue.getKey());
+        assertEquals("Øl på fredag", decodedIssue.getSummary());
+    }
+
+    @Test
+    public void encodeAndDecodeEmptyIssue() {
+        JiraIssue emptyIssue = new JiraIssue("EXAMPLE-1", null);
+        emptyIssue.setRelatedIssues(Collections.emptyList());
+
+        JiraIssue decodedIssue = IssueCodec.decode(IssueCodec.encode(emptyIssue));
+
+        assertEquals(emptyIssue, decodedIssue);
+        assertNull(decodedIssue.getSummary());
+        assertNull(decodedIssue.getAssignee());
+    }
+
+    @Test
+    public void readString() {
+        byte[] data = IssueCodec.encode(issue);
+
+        assertEquals("In Progress", IssueCodec.readString(data, IssueCodec.Field.STATUS));
+        assertEquals("alice", IssueCodec.readString(data, IssueCodec.Field.ASSIGNEE));
+        assertEquals("EXAMPLE-2", IssueCodec.readString(data, IssueCodec.Field.PARENT_ISSUE));
+        assertNull(IssueCodec.readString(IssueCodec.encode(new JiraIssue("EXAMPLE-1", null)),
+                IssueCodec.Field.SUMMARY));
+    }
+
+    @Test
+    public void encodeRepeatedStringsOnce() {
+        JiraIssue repeatingIssue = new JiraIssue("EXAMPLE-1", "In Progress");
+        repeatingIssue.setStatus("In Progress");
+
+        JiraIssue otherIssue = new JiraIssue("EXAMPLE-1", "Summary");
+        otherIssue.setStatus("In Progress");
+
+        assertTrue(IssueCodec.encode(repeatingIssue).length < IssueCodec.encode(otherIssue).length);
+    }
+
+    @Test
+    public void encodeSmallerThanJson() {
+        String json = "{\"key\":\"EXAMPLE-1\",\"summary\":\"Øl på fredag\",\"status\":\"In Progress\","
+                + "\"assignee\":{\"name\":\"alice\",\"displayName\":\"Alice\"},\"resolution\":null,"
+                + "\"issuetype\":{\"name\":\"Sub-task\",\"subtask\":true},"
+                + "\"parent\":{\"key\":\"EXAMPLE-2\",\"summary\":\"Parent\"},"
+                + "\"related\":[{\"key\":\"EXAMPLE-3\",\"summary\":\"Related\"},{\"key\":\"EXAMPLE-4\"}]}";
+
+        int encodedLength = IssueCodec.encode(issue).length;
+        int jsonLength = json.getBytes(Charsets.UTF_8).length;
+
+        assertTrue("Encoded " + encodedLength + " bytes, JSON " + jsonLength + " bytes",
+                encodedLength * 2 < jsonLength);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeUnknownVersion() {
+        IssueCodec.decode(new byte[]{42, 0});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeTruncated() {
+        byte[] data = IssueCodec.encode(issue);
+        IssueCodec.decode(Arrays.copyOf(data, data.length - 3));
+    }
+}
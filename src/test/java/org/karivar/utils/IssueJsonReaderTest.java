@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class IssueJsonReaderTest {
+
+    @Test
+    public void readSubtask() {
+        String json = "{\"expand\":\"renderedFields,names\",\"id\":\"10002\",\n"
+                + "  \"self\":\"https://jira.example.com/rest/api/2/issue/10002\",\n"
+                + "  \"fields\" : {\n"
+                + "    \"customfield_10010\" : [{\"value\":\"a \\\"quoted\\\" [value]\"}, 12.5e3, true, null],\n"
+                + "    \"summary\" : \"Fix the \\u00f8l \\\\ tab\\there\",\n"
+                + "    \"status\" : {\"self\":\"x\",\"name\":\"In Progress\",\"statusCategory\":{\"name\":\"Doing\"}},\n"
+                + "    \"issuetype\" : {\"name\":\"Sub-task\",\"subtask\":true},\n"
+                + "    \"assignee\" : null,\n"
+                + "    \"resolution\" : {\"name\":\"Done\",\"description\":\"Work is done\"},\n"
+                + "    \"parent\" : {\"id\":\"10001\",\"key\":\"EXAMPLE-1\",\"fields\":{\"summary\":\"Story\"}}\n"
+                + "  },\n"
+                + "  \"key\" : \"EXAMPLE-2\"\n"
+                + "}";
+
+        JiraIssue jiraIssue = IssueJsonReader.read(json, Collections.emptyList());
+
+        assertEquals("EXAMPLE-2", jiraIssue.getKey());
+        assertEquals("Fix the øl \\ tab\there", jiraIssue.getSummary());
+        assertEquals("In Progress", jiraIssue.getStatus());
+        assertEquals("Sub-task", jiraIssue.getIssueTypeName());
+        assertTrue(jiraIssue.isSubtask());
+        assertNull("The assignee isn't known", jiraIssue.getAssignee());
+        assertNull("The resolution is skipped", jiraIssue.getResolution());
+        assertEquals(Optional.of(new BasicJiraIssue("EXAMPLE-1", "Story")), jiraIssue.getParentIssue());
+        assertNull(jiraIssue.getRelatedIssues());
+    }
+
+    @Test
+    public void readRelatedIssuesWithoutSummary() {
+        String json = "{\"key\":\"EXAMPLE-1\",\"fields\":{\"issuelinks\":["
+                + "{\"type\":{\"name\":\"Relates\"},\"outwardIssue\":{\"key\":\"EXAMPLE-2\"}},"
+                + "{\"type\":null,\"outwardIssue\":{\"key\":\"EXAMPLE-3\"}},"
+                + "{\"type\":{\"name\":\"Relates\"},\"outwardIssue\":null,\"inwardIssue\":{\"key\":\"EXAMPLE-4\"}}]}}";
+
+        JiraIssue jiraIssue = IssueJsonReader.read(json, Collections.singletonList("relates"));
+
+        assertNull(jiraIssue.getSummary());
+        assertEquals(Collections.singletonList(new BasicJiraIssue("EXAMPLE-2", null)),
+                jiraIssue.getRelatedIssues());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readWithoutFields() {
+        IssueJsonReader.read("{\"key\":\"EXAMPLE-1\"}", Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readTruncated() {
+        IssueJsonReader.read("{\"key\":\"EXAMPLE-1\",\"fields\":{\"summary\":\"Sto", Collections.emptyList());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class IssueKeyGuesserTest {
+    private final IssueKeyGuesser guesser = new IssueKeyGuesser(IssueKeyMatcher.forProjectKeys("EXAMPLE"));
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File gitDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        gitDirectory = temporaryFolder.newFolder(".git");
+        write("HEAD", "ref: refs/heads/feature/EXAMPLE-431-login-timeout\n");
+    }
+
+    @Test
+    public void guessFromPreparedMessage() throws Exception {
+        File commitMessageFile = write("COMMIT_EDITMSG", "EXAMPLE-12 Fixed the accounts\n\n# Comment\n");
+
+        assertEquals(ImmutableSet.of("EXAMPLE-12"), guesser.guess(commitMessageFile));
+    }
+
+    @Test
+    public void guessFromBranchName() throws Exception {
+        File commitMessageFile = write("COMMIT_EDITMSG", "# Please enter the commit message EXAMPLE-12\n");
+
+        assertEquals(ImmutableSet.of("EXAMPLE-431"), guesser.guess(commitMessageFile));
+    }
+
+    @Test
+    public void readBranchName() throws Exception {
+        assertEquals(Optional.of("feature/EXAMPLE-431-login-timeout"), IssueKeyGuesser.readBranchName(gitDirectory));
+
+        write("HEAD", "0123456789abcdef0123456789abcdef01234567\n");
+        assertFalse("Detached HEAD", IssueKeyGuesser.readBranchName(gitDirectory).isPresent());
+    }
+
+    private File write(String path, String contents) throws Exception {
+        File file = new File(gitDirectory, path);
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IssueKeyMatcherTest {
+
+    @Test
+    public void findAll() {
+        List<IssueKeyMatcher.Match> matches = IssueKeyMatcher.forProjectKeys("EXAMPLE PR ERROR")
+                .findAll("[example-12] Fix PR-3: see error-100, ERROR-4x and pr-");
+
+        assertEquals(3, matches.size());
+        assertEquals("EXAMPLE-12", matches.get(0).getKey());
+        assertEquals(1, matches.get(0).getStart());
+        assertEquals(11, matches.get(0).getEnd());
+        assertEquals("PR-3", matches.get(1).getKey());
+        assertEquals("ERROR-100", matches.get(2).getKey());
+    }
+
+    @Test
+    public void findAllLongestProjectKey() {
+        List<IssueKeyMatcher.Match> matches = IssueKeyMatcher.forProjectKeys("PR PRJ PR-").findAll("prj-7 pr-8");
+
+        assertEquals(2, matches.size());
+        assertEquals("PRJ-7", matches.get(0).getKey());
+        assertEquals("PR-8", matches.get(1).getKey());
+    }
+
+    @Test
+    public void findAllInsideWords() {
+        assertTrue(IssueKeyMatcher.forProjectKeys("PR").findAll("prepare xpr-1 pr-1a pr").isEmpty());
+    }
+
+    @Test
+    public void findAllInBranchNames() {
+        List<IssueKeyMatcher.Match> matches = IssueKeyMatcher.forProjectKeys("PR").findAll("feature/PR-42-login");
+
+        assertEquals(1, matches.size());
+        assertEquals("PR-42", matches.get(0).getKey());
+    }
+
+    @Test
+    public void forProjectKeysReusesMatcher() {
+        IssueKeyMatcher matcher = IssueKeyMatcher.forProjectKeys("EXAMPLE PR");
+
+        assertSame(matcher, IssueKeyMatcher.forProjectKeys("EXAMPLE PR"));
+        assertNotSame(matcher, IssueKeyMatcher.forProjectKeys("EXAMPLE"));
+    }
+}
@@ -5,9 +5,16 @@ import mockit.Deencapsulation;
 import mockit.Injectable;
 import mockit.Tested;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.JiraTimeoutException;
+import org.karivar.utils.domain.JiraUnavailableException;
+import org.karivar.utils.other.CacheDirectory;
 import org.karivar.utils.other.UTF8Control;
 
 import java.net.URI;
+import java.net.URLEncoder;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -24,6 +31,11 @@ public class JiraConnectorTest {
     @Injectable
     private IssueRestClient issueRestClient;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String cacheDirectory;
+
     @BeforeClass
     public static void setUpClass() {
         resourceBundle = ResourceBundle.getBundle("messages", Locale.forLanguageTag("en"),
@@ -35,6 +47,22 @@ public class JiraConnectorTest {
         resourceBundle = null;
     }
 
+    @Before
+    public void setUp() {
+        // The issues, latencies and circuits of the tests are kept out of the cache of the user
+        cacheDirectory = System.setProperty(CacheDirectory.DIRECTORY_PROPERTY,
+                temporaryFolder.getRoot().getAbsolutePath());
+    }
+
+    @After
+    public void restoreCacheDirectory() {
+        if (cacheDirectory == null) {
+            System.clearProperty(CacheDirectory.DIRECTORY_PROPERTY);
+        } else {
+            System.setProperty(CacheDirectory.DIRECTORY_PROPERTY, cacheDirectory);
+        }
+    }
+
     @Test
     public void getDecodedPasswordHello() {
         jiraConnector = new JiraConnector(resourceBundle);
@@ -66,4 +94,165 @@ public class JiraConnectorTest {
         assertEquals("https:///google.com", uri.toString());
     }
 
+    @Test
+    public void mapJiraIssueWithRelatedIssues() throws Exception {
+        jiraConnector = new JiraConnector(resourceBundle);
+        String issueJson = "{\"key\":\"EXAMPLE-1\",\"fields\":{\"summary\":\"Story\","
+                + "\"status\":{\"name\":\"In Progress\"},"
+                + "\"issuetype\":{\"name\":\"Story\",\"subtask\":false},"
+                + "\"assignee\":{\"name\":\"alice\",\"displayName\":\"Alice\"},"
+                + "\"resolution\":null,"
+                + "\"issuelinks\":["
+                + "{\"type\":{\"name\":\"Relates\"},"
+                + "\"outwardIssue\":{\"key\":\"EXAMPLE-2\",\"fields\":{\"summary\":\"Related\"}}},"
+                + "{\"type\":{\"name\":\"Blocks\"},"
+                + "\"inwardIssue\":{\"key\":\"EXAMPLE-3\",\"fields\":{\"summary\":\"Blocker\"}}},"
+                + "{\"type\":{\"name\":\"Cloners\"},"
+                + "\"outwardIssue\":{\"key\":\"EXAMPLE-4\",\"fields\":{\"summary\":\"Clone\"}}}]}}";
+
+        JiraIssue jiraIssue = Deencapsulation.invoke(jiraConnector, "mapJiraIssue", issueJson,
+                Arrays.asList("relates", "blocks"));
+
+        assertEquals("In Progress", jiraIssue.getStatus());
+        assertEquals("Story", jiraIssue.getIssueTypeName());
+        assertEquals("Alice", jiraIssue.getAssignee().get().getDisplayName());
+        assertEquals(Arrays.asList(new BasicJiraIssue("EXAMPLE-2", "Related"),
+                new BasicJiraIssue("EXAMPLE-3", "Blocker")), jiraIssue.getRelatedIssues());
+    }
+
+    @Test
+    public void getKeyQueriesSplitsLongQueries() throws Exception {
+        List<String> issueKeys = new ArrayList<>();
+        for (int i = 1; i <= 300; i++) {
+            issueKeys.add("EXAMPLE-" + i);
+        }
+
+        List<String> queries = JiraConnector.getKeyQueries(issueKeys);
+
+        assertTrue(queries.size() > 1);
+        assertEquals("key in (EXAMPLE-1, EXAMPLE-2, ", queries.get(0).substring(0, 30));
+        int queriedKeys = 0;
+        for (String query : queries) {
+            // The query is sent URL encoded, where every ", " takes four characters
+            int encodedLength = URLEncoder.encode(query, "UTF-8").length();
+            assertTrue("The encoded query is " + encodedLength + " characters", encodedLength <= 2000);
+            queriedKeys += query.split(",").length;
+        }
+        assertEquals(300, queriedKeys);
+    }
+
+    @Test
+    public void getJiraPopulatedIssuesFailsForIssueNotReturned() throws Exception {
+        jiraConnector = new JiraConnector(resourceBundle);
+        Deencapsulation.setField(jiraConnector, "issueSource", new IssueSource() {
+            @Override
+            public Response get(String resource, Deadline deadline) {
+                if (resource.contains("EXAMPLE-2")) {
+                    return new Response(500, "");
+                }
+                return new Response(200, "{\"key\":\"EXAMPLE-1\",\"fields\":{\"summary\":\"Story\","
+                        + "\"status\":{\"name\":\"In Progress\"},"
+                        + "\"issuetype\":{\"name\":\"Story\",\"subtask\":false}}}");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        Deencapsulation.setField(jiraConnector, "circuitBreaker",
+                new CircuitBreaker(temporaryFolder.newFile("circuit"), 0));
+        // Keeps the issues of this test apart from any other cached issues
+        Deencapsulation.setField(jiraConnector, "cacheIdentity", UUID.randomUUID().toString());
+
+        try {
+            jiraConnector.getJiraPopulatedIssues(Arrays.asList("EXAMPLE-1", "EXAMPLE-2"),
+                    Collections.emptyList(), CommitMessageManipulator.getFetchPlan(false, Collections.emptyList()),
+                    2, Optional.empty(), Deadline.after(10000));
+            fail("The commit is accepted without checking EXAMPLE-2");
+        } catch (JiraUnavailableException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("EXAMPLE-2"));
+        }
+    }
+
+    @Test
+    public void getJiraPopulatedIssuesReportsExpiredDeadline() throws Exception {
+        jiraConnector = new JiraConnector(resourceBundle);
+        Deencapsulation.setField(jiraConnector, "issueSource", new IssueSource() {
+            @Override
+            public Response get(String resource, Deadline deadline) {
+                throw new AssertionError("Requested " + resource + " after the deadline");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        Deencapsulation.setField(jiraConnector, "circuitBreaker",
+                new CircuitBreaker(temporaryFolder.newFile("circuit"), 1));
+        Deencapsulation.setField(jiraConnector, "cacheIdentity", UUID.randomUUID().toString());
+        Deadline deadline = Deadline.after(1);
+        Thread.sleep(10);
+
+        try {
+            jiraConnector.getJiraPopulatedIssues(Collections.singletonList("EXAMPLE-1"), Collections.emptyList(),
+                    CommitMessageManipulator.getFetchPlan(false, Collections.emptyList()), 1, Optional.empty(),
+                    deadline);
+            fail("The expired deadline isn't reported");
+        } catch (JiraTimeoutException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("1 ms"));
+        }
+    }
+
+    @Test
+    public void closeIsFast() {
+        jiraConnector = new JiraConnector(resourceBundle);
+        Deencapsulation.setField(jiraConnector, "issueSource", createIssueSource(0));
+
+        long start = System.nanoTime();
+        jiraConnector.close();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Closed in " + elapsedMillis + " ms", elapsedMillis < 50);
+    }
+
+    @Test
+    public void closeIsBounded() {
+        Set<Thread> threadsBefore = Thread.getAllStackTraces().keySet();
+        jiraConnector = new JiraConnector(resourceBundle);
+        Deencapsulation.setField(jiraConnector, "issueSource", createIssueSource(10000));
+
+        long start = System.nanoTime();
+        assertFalse(jiraConnector.close(100));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Closed in " + elapsedMillis + " ms", elapsedMillis < 1000);
+        // The connection is still closing, but nothing left behind may keep the JVM from exiting
+        List<String> leftBehind = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!threadsBefore.contains(thread) && thread.isAlive()) {
+                assertTrue(thread.getName() + " keeps the JVM alive", thread.isDaemon());
+                leftBehind.add(thread.getName());
+            }
+        }
+        assertTrue("The connection is closed in the background", leftBehind.contains("githook-jira-close"));
+        assertTrue("Closing again does nothing", jiraConnector.close(100));
+    }
+
+    private static IssueSource createIssueSource(long closeMillis) {
+        return new IssueSource() {
+            @Override
+            public Response get(String resource, Deadline deadline) {
+                return new Response(200, "{}");
+            }
+
+            @Override
+            public void close() {
+                try {
+                    Thread.sleep(closeMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PrefetchRecordTest {
+    private static final long TIME_TO_LIVE = 60000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void paidOffOnce() {
+        createRecord().write(Arrays.asList("EXAMPLE-1", "EXAMPLE-2"));
+
+        PrefetchRecord prefetchRecord = createRecord();
+        assertTrue(prefetchRecord.use(Collections.singletonList("EXAMPLE-2"), TIME_TO_LIVE));
+        assertEquals(1, prefetchRecord.getPaidOffCount());
+        assertEquals(1, prefetchRecord.getCommitCount());
+
+        prefetchRecord = createRecord();
+        assertFalse("The record is used", prefetchRecord.use(Collections.singletonList("EXAMPLE-2"), TIME_TO_LIVE));
+        assertEquals(1, prefetchRecord.getPaidOffCount());
+        assertEquals(2, prefetchRecord.getCommitCount());
+    }
+
+    @Test
+    public void notPaidOffForOtherIssues() {
+        createRecord().write(Collections.singletonList("EXAMPLE-1"));
+
+        assertFalse(createRecord().use(Arrays.asList("EXAMPLE-1", "EXAMPLE-3"), TIME_TO_LIVE));
+    }
+
+    @Test
+    public void notPaidOffWhenExpired() {
+        createRecord().write(Collections.singletonList("EXAMPLE-1"));
+
+        assertFalse(createRecord().use(Collections.singletonList("EXAMPLE-1"), 0));
+    }
+
+    private PrefetchRecord createRecord() {
+        return new PrefetchRecord(temporaryFolder.getRoot(), "/work/project/.git");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class SnapshotCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File source;
+    private File missingSource;
+    private SnapshotCache cache;
+    private ListMultimap<String, String> entries;
+
+    @Before
+    public void setUp() throws Exception {
+        source = temporaryFolder.newFile("config");
+        Files.asCharSink(source, Charsets.UTF_8).write("[githook]\n\tlanguage = no\n");
+        source.setLastModified(System.currentTimeMillis() - 60000);
+        missingSource = new File(temporaryFolder.getRoot(), "missing");
+
+        cache = new SnapshotCache(new File(temporaryFolder.getRoot(), "snapshot"));
+        entries = SnapshotCache.newEntries();
+        entries.put("githook.jira.projectkey", "EXAMPLE");
+        entries.put("githook.jira.projectkey", "PR");
+    }
+
+    @Test
+    public void loadWithoutSnapshot() {
+        assertFalse(cache.load().isPresent());
+    }
+
+    @Test
+    public void storeAndLoad() {
+        cache.store(ImmutableList.of(source, missingSource), entries);
+        Optional<ImmutableListMultimap<String, String>> loaded = cache.load();
+
+        assertTrue("The snapshot is valid", loaded.isPresent());
+        assertEquals(entries, loaded.get());
+    }
+
+    @Test
+    public void loadChangedSource() throws Exception {
+        cache.store(ImmutableList.of(source), entries);
+        Files.asCharSink(source, Charsets.UTF_8).write("[githook]\n\tlanguage = en\n");
+
+        assertFalse("The snapshot is outdated", cache.load().isPresent());
+    }
+
+    @Test
+    public void loadCreatedSource() throws Exception {
+        cache.store(ImmutableList.of(source, missingSource), entries);
+        Files.asCharSink(missingSource, Charsets.UTF_8).write("[githook]\n\tlanguage = en\n");
+
+        assertFalse("The snapshot is outdated", cache.load().isPresent());
+    }
+
+    @Test
+    public void storeRecentlyChangedSource() {
+        source.setLastModified(System.currentTimeMillis());
+        cache.store(ImmutableList.of(source), entries);
+
+        assertFalse("The snapshot isn't stored", cache.load().isPresent());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SnapshotWatcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void missingDirectoryIsWatched() throws Exception {
+        // E.g ~/.config/git/config where ~/.config/git doesn't exist
+        File missingDirectory = new File(temporaryFolder.getRoot(), "git");
+        CountDownLatch changed = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        new SnapshotWatcher().watch(Collections.singletonList(new File(missingDirectory, "config")), () -> {
+            runs.incrementAndGet();
+            changed.countDown();
+        });
+        assertEquals("The listener isn't run before anything changes", 0, runs.get());
+
+        assertTrue(missingDirectory.mkdir());
+        assertTrue("The creation of the directory is detected", changed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void listenerRunsOnce() throws Exception {
+        File first = temporaryFolder.newFile("config");
+        File second = temporaryFolder.newFile("config.worktree");
+        CountDownLatch changed = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        new SnapshotWatcher().watch(Arrays.asList(first, second), () -> {
+            runs.incrementAndGet();
+            changed.countDown();
+        });
+
+        assertTrue(first.delete());
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+        assertTrue(second.delete());
+        Thread.sleep(200);
+        assertEquals("The listener is forgotten once it has run", 1, runs.get());
+    }
+}